@@ -0,0 +1,30 @@
+package org.davidmoten.text.utils;
+
+/**
+ * Thrown when wrapping would need more than
+ * {@link Wrapper.Builder#maxBufferChars(int)} chars to be buffered and
+ * {@link Wrapper.Builder#failOnBufferFull(boolean)} is set. Lines already
+ * written stay written, the rest of the input is not wrapped.
+ */
+public final class BufferFullException extends RuntimeException {
+
+    private static final long serialVersionUID = 2924517403941823618L;
+
+    private final int maxBufferChars;
+
+    BufferFullException(int maxBufferChars) {
+        super("more than maxBufferChars=" + maxBufferChars
+                + " chars would need to be buffered to wrap the input");
+        this.maxBufferChars = maxBufferChars;
+    }
+
+    /**
+     * Returns the limit that was reached.
+     *
+     * @return maximum number of chars buffered
+     */
+    public int maxBufferChars() {
+        return maxBufferChars;
+    }
+
+}
@@ -0,0 +1,111 @@
+package org.davidmoten.text.utils;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Encodes wrapped output straight into a {@link WritableByteChannel}. Chars
+ * are staged in one buffer and encoded into another with a single
+ * {@link CharsetEncoder} so the channel only sees large writes. Malformed or
+ * unmappable chars are replaced (as {@link java.io.OutputStreamWriter} does).
+ * {@link #flush()} must be called once all output has been written.
+ */
+final class ChannelLineConsumer implements LineConsumer {
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final char[] newLine;
+    private final CharBuffer chars;
+    private final ByteBuffer bytes;
+
+    ChannelLineConsumer(WritableByteChannel channel, Charset charset, String newLine,
+            int bufferSize) {
+        this.channel = channel;
+        this.encoder = charset.newEncoder() //
+                .onMalformedInput(CodingErrorAction.REPLACE) //
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.newLine = newLine.toCharArray();
+        this.chars = CharBuffer.allocate(bufferSize);
+        // room for the encoding of every staged char so an encode always progresses
+        this.bytes = ByteBuffer
+                .allocate((int) Math.ceil(bufferSize * (double) encoder.maxBytesPerChar()));
+    }
+
+    @Override
+    public void write(char[] c, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = Math.min(length, chars.remaining());
+            chars.put(c, offset, n);
+            offset += n;
+            length -= n;
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+        }
+    }
+
+    @Override
+    public void write(String s) throws IOException {
+        int start = 0;
+        int end = s.length();
+        while (start < end) {
+            int n = Math.min(end - start, chars.remaining());
+            chars.put(s, start, start + n);
+            start += n;
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+        }
+    }
+
+    @Override
+    public void writeNewLine() throws IOException {
+        write(newLine, 0, newLine.length);
+    }
+
+    /**
+     * Encodes any staged chars and writes all pending bytes to the channel. The
+     * channel is not closed.
+     *
+     * @throws IOException on write failure
+     */
+    void flush() throws IOException {
+        encode(true);
+        while (encoder.flush(bytes).isOverflow()) {
+            writeBytes();
+        }
+        writeBytes();
+    }
+
+    private void encode(boolean endOfInput) throws IOException {
+        // Buffer casts link the Java 8 signatures when compiled on later jdks
+        ((Buffer) chars).flip();
+        while (true) {
+            CoderResult r = encoder.encode(chars, bytes, endOfInput);
+            if (r.isOverflow()) {
+                writeBytes();
+            } else if (r.isUnderflow()) {
+                break;
+            } else {
+                r.throwException();
+            }
+        }
+        // an unpaired high surrogate at the end waits for the next write
+        chars.compact();
+    }
+
+    private void writeBytes() throws IOException {
+        ((Buffer) bytes).flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        ((Buffer) bytes).clear();
+    }
+}
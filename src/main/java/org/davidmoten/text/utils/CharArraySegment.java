@@ -0,0 +1,41 @@
+package org.davidmoten.text.utils;
+
+/**
+ * A mutable {@link CharSequence} view over a range of a char array. The engine
+ * reuses one instance to pass regions of its buffer to a string width function
+ * without copying.
+ */
+final class CharArraySegment implements CharSequence {
+
+    private char[] chars;
+    private int start;
+    private int end;
+
+    CharArraySegment set(char[] chars, int start, int end) {
+        this.chars = chars;
+        this.start = start;
+        this.end = end;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return chars[start + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(chars, this.start + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, start, end - start);
+    }
+
+}
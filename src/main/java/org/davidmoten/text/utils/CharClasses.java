@@ -0,0 +1,91 @@
+package org.davidmoten.text.utils;
+
+import java.util.Set;
+
+/**
+ * Character classes used by the wrapping engine compiled once from a set of
+ * extra word characters. Classification is a table lookup: a dense table for
+ * Latin-1 and a two-level table for the rest of the BMP where blocks without
+ * any extra word characters are shared between all instances.
+ */
+final class CharClasses {
+
+    /**
+     * A letter or an extra word character.
+     */
+    static final int WORD = 1;
+
+    /**
+     * Punctuation that is not an extra word character. A word character
+     * following one of these starts a new word.
+     */
+    static final int PUNCTUATION = 2;
+
+    private static final String PUNCTUATION_CHARS = "!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~";
+
+    private static final int BLOCK_SIZE = 256;
+
+    // never mutated, instances copy a block before changing it
+    private static final byte[][] SHARED_BLOCKS = createSharedBlocks();
+
+    static final CharClasses DEFAULT = of(WordWrap.SPECIAL_WORD_CHARS_SET_DEFAULT);
+
+    private final byte[] latin1;
+    private final byte[][] blocks;
+
+    private CharClasses(byte[][] blocks) {
+        this.latin1 = blocks[0];
+        this.blocks = blocks;
+    }
+
+    static CharClasses of(Set<Character> extraWordChars) {
+        byte[][] blocks = SHARED_BLOCKS.clone();
+        for (Character c : extraWordChars) {
+            if (c != null) {
+                char ch = c;
+                int b = ch >>> 8;
+                if (blocks[b] == SHARED_BLOCKS[b]) {
+                    blocks[b] = blocks[b].clone();
+                }
+                blocks[b][ch & 0xFF] = WORD;
+            }
+        }
+        return new CharClasses(blocks);
+    }
+
+    int classOf(char ch) {
+        if (ch < BLOCK_SIZE) {
+            return latin1[ch];
+        } else {
+            return blocks[ch >>> 8][ch & 0xFF];
+        }
+    }
+
+    /**
+     * Returns the class of a code point. Extra word characters are always in the
+     * BMP so a supplementary code point is a word character if it is a letter.
+     *
+     * @param codePoint code point
+     * @return class
+     */
+    int classOf(int codePoint) {
+        if (codePoint <= Character.MAX_VALUE) {
+            return classOf((char) codePoint);
+        } else {
+            return Character.isLetter(codePoint) ? WORD : 0;
+        }
+    }
+
+    private static byte[][] createSharedBlocks() {
+        byte[][] blocks = new byte[BLOCK_SIZE][BLOCK_SIZE];
+        for (int i = 0; i <= Character.MAX_VALUE; i++) {
+            char ch = (char) i;
+            if (Character.isLetter(ch)) {
+                blocks[i >>> 8][i & 0xFF] = WORD;
+            } else if (PUNCTUATION_CHARS.indexOf(ch) != -1) {
+                blocks[i >>> 8][i & 0xFF] = PUNCTUATION;
+            }
+        }
+        return blocks;
+    }
+}
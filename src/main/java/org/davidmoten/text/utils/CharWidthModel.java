@@ -0,0 +1,58 @@
+package org.davidmoten.text.utils;
+
+/**
+ * An additive model of string width where the width of a string is the sum of
+ * the widths of its characters plus a kerning adjustment for each adjacent pair
+ * of characters. Because widths are additive the wrapping engine maintains
+ * running sums as characters arrive rather than re-measuring the whole line on
+ * every character.
+ *
+ * <p>
+ * Wrapping with a {@code CharWidthModel} produces the same output as wrapping
+ * with the string width function {@code s -> model.width(s)}.
+ */
+public interface CharWidthModel {
+
+    /**
+     * Returns the width of the given character.
+     *
+     * @param ch character
+     * @return width of the character
+     */
+    double width(char ch);
+
+    /**
+     * Returns the adjustment to be added to the width of a string when
+     * {@code previous} is immediately followed by {@code ch}. The default is zero
+     * (no kerning).
+     *
+     * @param previous the preceding character
+     * @param ch       the character following {@code previous}
+     * @return kerning adjustment
+     */
+    default double kerning(char previous, char ch) {
+        return 0;
+    }
+
+    /**
+     * Returns the width of the given string according to this model. Widths are
+     * summed from left to right which is the same order the wrapping engine uses
+     * for its running sums.
+     *
+     * @param s characters to measure
+     * @return width of {@code s}
+     */
+    default double width(CharSequence s) {
+        double w = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (i == 0) {
+                w += width(ch);
+            } else {
+                w += width(ch) + kerning(s.charAt(i - 1), ch);
+            }
+        }
+        return w;
+    }
+
+}
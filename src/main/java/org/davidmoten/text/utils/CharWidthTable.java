@@ -0,0 +1,158 @@
+package org.davidmoten.text.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+/**
+ * A {@link CharWidthModel} holding the width of each character in a
+ * {@code float[]}, sampled once from a string width function. Use it to take
+ * a costly measurement (an AWT {@code Font} or a PDF font for example) off the
+ * wrapping hot path:
+ *
+ * <pre>
+ * CharWidthTable table = CharWidthTable.sample(s -&gt; fontMetrics.stringWidth(s.toString()),
+ *         ' ', '~');
+ * WordWrap.from(text).maxWidth(400).charWidthModel(table).wrap();
+ * </pre>
+ *
+ * <p>
+ * Characters outside the sampled range are either given a fixed width or
+ * measured the first time they are seen and remembered (in pages of 256
+ * characters allocated on demand). A character outside the BMP is measured as
+ * one code point and given its width through {@link #kerning(char, char)} of
+ * its surrogate pair (each surrogate on its own has width 0). Kerning is not
+ * otherwise sampled so the width of a string is taken to be the sum of the
+ * widths of its characters. A table is safe for concurrent use.
+ */
+public final class CharWidthTable implements CharWidthModel {
+
+    private static final int PAGE_BITS = 8;
+
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private final char first;
+    private final float[] widths;
+
+    // null if characters outside the range have a fixed width
+    private final Function<? super CharSequence, ? extends Number> stringWidth;
+    private final float outsideWidth;
+
+    // lazily measured widths outside the range, NaN if not yet measured
+    private final AtomicReferenceArray<float[]> pages;
+
+    private CharWidthTable(char first, float[] widths,
+            Function<? super CharSequence, ? extends Number> stringWidth, float outsideWidth) {
+        this.first = first;
+        this.widths = widths;
+        this.stringWidth = stringWidth;
+        this.outsideWidth = outsideWidth;
+        this.pages = stringWidth == null ? null
+                : new AtomicReferenceArray<>((Character.MAX_CODE_POINT + 1) >> PAGE_BITS);
+    }
+
+    /**
+     * Returns a table with the widths of {@code first..last} (inclusive)
+     * measured now. Characters outside the range are measured with
+     * {@code stringWidth} when first seen and then remembered.
+     *
+     * @param stringWidth returns the width of a sequence of characters, is called
+     *                    with one character at a time
+     * @param first       first character of the sampled range
+     * @param last        last character of the sampled range
+     * @return table
+     * @throws IllegalArgumentException if {@code last < first}
+     */
+    public static CharWidthTable sample(Function<? super CharSequence, ? extends Number> stringWidth,
+            char first, char last) {
+        Preconditions.checkNotNull(stringWidth);
+        return new CharWidthTable(first, measure(stringWidth, first, last), stringWidth, 0);
+    }
+
+    /**
+     * Returns a table with the widths of {@code first..last} (inclusive)
+     * measured now. Characters outside the range have width
+     * {@code outsideWidth} and {@code stringWidth} is not retained.
+     *
+     * @param stringWidth  returns the width of a sequence of characters, is called
+     *                     with one character at a time
+     * @param first        first character of the sampled range
+     * @param last         last character of the sampled range
+     * @param outsideWidth width of characters outside the range
+     * @return table
+     * @throws IllegalArgumentException if {@code last < first}
+     */
+    public static CharWidthTable sample(Function<? super CharSequence, ? extends Number> stringWidth,
+            char first, char last, float outsideWidth) {
+        Preconditions.checkNotNull(stringWidth);
+        return new CharWidthTable(first, measure(stringWidth, first, last), null, outsideWidth);
+    }
+
+    private static float[] measure(Function<? super CharSequence, ? extends Number> stringWidth,
+            char first, char last) {
+        Preconditions.checkArgument(first <= last, "last must not be before first");
+        float[] widths = new float[last - first + 1];
+        for (int i = 0; i < widths.length; i++) {
+            char ch = (char) (first + i);
+            if (!Character.isSurrogate(ch)) {
+                widths[i] = measure(stringWidth, ch);
+            }
+        }
+        return widths;
+    }
+
+    private static float measure(Function<? super CharSequence, ? extends Number> stringWidth,
+            int codePoint) {
+        return stringWidth.apply(new String(Character.toChars(codePoint))).floatValue();
+    }
+
+    @Override
+    public double width(char ch) {
+        int i = ch - first;
+        if (Character.isSurrogate(ch)) {
+            // a surrogate pair is measured as one code point by kerning
+            return 0;
+        } else if (i >= 0 && i < widths.length) {
+            return widths[i];
+        } else if (stringWidth == null) {
+            return outsideWidth;
+        } else {
+            return outsideRange(ch);
+        }
+    }
+
+    @Override
+    public double kerning(char previous, char ch) {
+        if (!Character.isHighSurrogate(previous) || !Character.isLowSurrogate(ch)) {
+            return 0;
+        } else if (stringWidth == null) {
+            return outsideWidth;
+        } else {
+            return outsideRange(Character.toCodePoint(previous, ch));
+        }
+    }
+
+    private float outsideRange(int codePoint) {
+        int p = codePoint >> PAGE_BITS;
+        float[] page = pages.get(p);
+        if (page == null) {
+            float[] created = new float[PAGE_SIZE];
+            Arrays.fill(created, Float.NaN);
+            if (pages.compareAndSet(p, null, created)) {
+                page = created;
+            } else {
+                page = pages.get(p);
+            }
+        }
+        float w = page[codePoint & (PAGE_SIZE - 1)];
+        if (Float.isNaN(w)) {
+            // a race only means the same width is measured and written twice
+            w = measure(stringWidth, codePoint);
+            page[codePoint & (PAGE_SIZE - 1)] = w;
+        }
+        return w;
+    }
+
+}
@@ -0,0 +1,163 @@
+package org.davidmoten.text.utils;
+
+import java.util.Arrays;
+
+/**
+ * The lines of wrapped text as offsets into the original input rather than as
+ * copied text. Line {@code i} is the input range {@code [start(i), end(i))}
+ * followed by a hyphen if {@code hyphenated(i)} is true. A range may contain
+ * carriage returns which the wrapped text output omits. An empty line has
+ * {@code start(i) == end(i)}.
+ *
+ * <p>
+ * Offsets are stored in primitive arrays that grow as required and are
+ * retained by {@link #clear()} so an instance can be reused across calls to
+ * {@link Wrapper#breaks(CharSequence, LineBreaks)} without allocation.
+ */
+public final class LineBreaks {
+
+    private int[] starts;
+    private int[] ends;
+    private boolean[] hyphenated;
+    private int size;
+
+    // the line being recorded, pendingStart is -1 if no text written yet
+    private int pendingStart = -1;
+    private int pendingEnd;
+    private boolean pendingHyphen;
+
+    public LineBreaks() {
+        this(16);
+    }
+
+    public LineBreaks(int initialCapacity) {
+        int n = Math.max(1, initialCapacity);
+        this.starts = new int[n];
+        this.ends = new int[n];
+        this.hyphenated = new boolean[n];
+    }
+
+    /**
+     * Returns the number of lines.
+     *
+     * @return number of lines
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the input offset of the first character of the line.
+     *
+     * @param line line index
+     * @return input offset (inclusive)
+     */
+    public int start(int line) {
+        checkIndex(line);
+        return starts[line];
+    }
+
+    /**
+     * Returns the input offset after the last character of the line.
+     *
+     * @param line line index
+     * @return input offset (exclusive)
+     */
+    public int end(int line) {
+        checkIndex(line);
+        return ends[line];
+    }
+
+    /**
+     * Returns true if a hyphen was inserted at the end of the line because a
+     * word was broken.
+     *
+     * @param line line index
+     * @return true if the line ends with an inserted hyphen
+     */
+    public boolean hyphenated(int line) {
+        checkIndex(line);
+        return hyphenated[line];
+    }
+
+    /**
+     * Removes all lines while retaining the allocated arrays.
+     */
+    public void clear() {
+        size = 0;
+        pendingStart = -1;
+        pendingHyphen = false;
+    }
+
+    private void checkIndex(int line) {
+        if (line < 0 || line >= size) {
+            throw new IndexOutOfBoundsException("line " + line + ", size " + size);
+        }
+    }
+
+    SpanConsumer recorder() {
+        return new SpanConsumer() {
+
+            @Override
+            public void span(int start, int end) {
+                LineBreaks.this.span(start, end);
+            }
+
+            @Override
+            public void hyphen() {
+                LineBreaks.this.hyphen();
+            }
+
+            @Override
+            public void newLine(int position) {
+                LineBreaks.this.newLine(position);
+            }
+
+            @Override
+            public void finish() {
+                LineBreaks.this.finish();
+            }
+        };
+    }
+
+    void span(int start, int end) {
+        pendingStart = start;
+        pendingEnd = end;
+    }
+
+    void hyphen() {
+        pendingHyphen = true;
+    }
+
+    void newLine(int position) {
+        if (pendingStart == -1) {
+            add(position, position, pendingHyphen);
+        } else {
+            add(pendingStart, pendingEnd, pendingHyphen);
+        }
+        pendingStart = -1;
+        pendingHyphen = false;
+    }
+
+    void finish() {
+        if (pendingStart != -1) {
+            add(pendingStart, pendingEnd, pendingHyphen);
+            pendingStart = -1;
+            pendingHyphen = false;
+        }
+    }
+
+    private void add(int start, int end, boolean hyphen) {
+        if (size == starts.length) {
+            int n = size * 2;
+            starts = Arrays.copyOf(starts, n);
+            ends = Arrays.copyOf(ends, n);
+            hyphenated = Arrays.copyOf(hyphenated, n);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        hyphenated[size] = hyphen;
+        size++;
+    }
+
+}
@@ -0,0 +1,124 @@
+package org.davidmoten.text.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Produces wrapped lines on demand. Characters are fed to the engine only until
+ * at least one line is complete so the source is read no further than needed
+ * (plus at most one read of the buffer size) and only the current line and
+ * the few lines completed by the last character are held in memory.
+ */
+final class LineIterator implements Iterator<String> {
+
+    // exactly one of text and reader is non-null
+    private final CharSequence text;
+    private final Reader reader;
+    private final WrapEngine engine;
+    private final char[] buffer;
+    private int bufferPosition;
+    private int bufferLength;
+    private int textPosition;
+
+    private final Deque<String> lines = new ArrayDeque<>();
+    private final StringBuilder line = new StringBuilder();
+    private boolean building;
+    private boolean finished;
+
+    private LineIterator(CharSequence text, Reader reader, int bufferSize,
+            Function<? super LineConsumer, WrapEngine> engineFactory) {
+        this.text = text;
+        this.reader = reader;
+        this.buffer = reader == null ? null : new char[bufferSize];
+        this.engine = engineFactory.apply(new LineConsumer() {
+
+            @Override
+            public void write(char[] chars, int offset, int length) {
+                line.append(chars, offset, length);
+                building = true;
+            }
+
+            @Override
+            public void write(String s) {
+                line.append(s);
+                building = true;
+            }
+
+            @Override
+            public void writeNewLine() {
+                lines.add(line.toString());
+                line.setLength(0);
+                building = false;
+            }
+        });
+    }
+
+    static LineIterator of(CharSequence text,
+            Function<? super LineConsumer, WrapEngine> engineFactory) {
+        return new LineIterator(text, null, 0, engineFactory);
+    }
+
+    static LineIterator of(Reader reader, int bufferSize,
+            Function<? super LineConsumer, WrapEngine> engineFactory) {
+        return new LineIterator(null, reader, bufferSize, engineFactory);
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (lines.isEmpty() && !finished) {
+                advance();
+            }
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+        return !lines.isEmpty();
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return lines.poll();
+    }
+
+    private void advance() throws IOException {
+        if (text != null) {
+            int n = text.length();
+            while (textPosition < n && lines.isEmpty()) {
+                engine.accept(text.charAt(textPosition++));
+            }
+            if (textPosition == n && lines.isEmpty()) {
+                finish();
+            }
+        } else {
+            if (bufferPosition == bufferLength) {
+                int n = reader.read(buffer, 0, buffer.length);
+                if (n == -1) {
+                    finish();
+                    return;
+                }
+                bufferPosition = 0;
+                bufferLength = n;
+            }
+            while (bufferPosition < bufferLength && lines.isEmpty()) {
+                engine.accept(buffer[bufferPosition++]);
+            }
+        }
+    }
+
+    private void finish() throws IOException {
+        engine.finish();
+        if (building) {
+            lines.add(line.toString());
+            line.setLength(0);
+        }
+        finished = true;
+    }
+}
@@ -0,0 +1,467 @@
+package org.davidmoten.text.utils;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Minimum raggedness line breaking, used by {@link WrapEngine} in place of its
+ * greedy state machine when {@link Wrapper.Builder#optimalFit(boolean)} is
+ * set. Text is buffered a paragraph at a time (up to a line feed) so memory is
+ * bounded by the longest paragraph. Each paragraph is split into words at
+ * whitespace, every word and separator is measured once, and the breaks that
+ * minimize the sum of the squared slack of every line but the last are chosen.
+ *
+ * <p>
+ * The width of a run of words is taken to be the sum of the widths of its
+ * words and separators. The cost of a line is then a convex function of a
+ * difference of prefix sums so the cost matrix is Monge (an overfull line of
+ * two or more words costs infinity, which keeps the property) and the best
+ * predecessor of each break point is found with a deque of candidates and a
+ * binary search, O(n log n) for n words rather than the O(n&sup2;) of the
+ * plain dynamic program.
+ *
+ * <p>
+ * A word wider than the maximum width is placed on a line of its own. If words
+ * may be broken it is split into pieces that fit (with a hyphen if enabled),
+ * each piece but the last on a line of its own, and the paragraph either side
+ * of it is fitted separately.
+ *
+ * <p>
+ * If a paragraph reaches the maximum buffer size the part up to its last
+ * whitespace is fitted and ended as if it were a paragraph of its own.
+ */
+final class OptimalFit {
+
+    private static final double INFINITY = Double.POSITIVE_INFINITY;
+
+    private final WrapEngine engine;
+    private final WidthFunction width;
+    // measures whole words and separators, possibly through a cache
+    private final WidthFunction wordWidth;
+    private final double maxWidth;
+    private final boolean insertHyphens;
+    private final boolean breakWords;
+    // measured when first needed so that a wrap without broken words does not
+    // report a measurement of its own
+    private double hyphenWidth = Double.NaN;
+    private final int maxBufferChars;
+    private final boolean failOnBufferFull;
+
+    // the paragraph being buffered and the input offset of each char (when
+    // positions are tracked)
+    private char[] chars = new char[64];
+    private int[] positions;
+    private int length;
+
+    // words of the paragraph: bounds in chars, width and width of the
+    // separator before the word (zero for the first word)
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private double[] widths = new double[16];
+    private double[] separators = new double[16];
+    private int words;
+
+    // dynamic program state indexed by break point within a segment
+    private double[] prefix = new double[16];
+    private double[] cost = new double[16];
+    private int[] previous = new int[16];
+    private int[] candidates = new int[16];
+    private int[] from = new int[16];
+    private int[] breaks = new int[16];
+
+    // true once a line of the current paragraph has been written
+    private boolean lineWritten;
+
+    // true once part of the current paragraph has been ended because the
+    // buffer was full, whitespace that follows is then a separator, not an
+    // indent
+    private boolean continued;
+
+    OptimalFit(WrapEngine engine, WidthFunction width, WidthFunction wordWidth, double maxWidth,
+            boolean insertHyphens, boolean breakWords, boolean trackPositions,
+            int maxBufferChars, boolean failOnBufferFull) {
+        this.engine = engine;
+        this.width = width;
+        this.wordWidth = wordWidth;
+        this.maxWidth = maxWidth;
+        this.insertHyphens = insertHyphens;
+        this.breakWords = breakWords;
+        this.maxBufferChars = maxBufferChars;
+        this.failOnBufferFull = failOnBufferFull;
+        if (trackPositions) {
+            positions = new int[chars.length];
+        }
+    }
+
+    void reset() {
+        length = 0;
+        continued = false;
+        shrink();
+    }
+
+    void accept(char ch, int position) throws IOException {
+        if (ch == '\n') {
+            paragraph(true);
+            continued = false;
+            shrink();
+        } else if (continued && length == 0 && Character.isWhitespace(ch)) {
+            // separator after a forced break
+        } else if (ch != '\r') {
+            if (length == chars.length) {
+                int size = (int) Math.min((long) length * 2, Math.max(maxBufferChars, length + 1));
+                chars = Arrays.copyOf(chars, size);
+                if (positions != null) {
+                    positions = Arrays.copyOf(positions, size);
+                }
+            }
+            chars[length] = ch;
+            if (positions != null) {
+                positions[length] = position;
+            }
+            length++;
+            if (length >= maxBufferChars) {
+                bufferFull();
+            }
+        }
+    }
+
+    /**
+     * Fits and ends the buffered part of the paragraph up to its last
+     * whitespace (all of it if there is none) and keeps the rest. A buffer of
+     * whitespace alone is dropped without ending the paragraph.
+     */
+    private void bufferFull() throws IOException {
+        if (failOnBufferFull) {
+            throw new BufferFullException(maxBufferChars);
+        }
+        int total = length;
+        int rest = total;
+        while (rest > 0 && !Character.isWhitespace(chars[rest - 1])) {
+            rest--;
+        }
+        int end = rest;
+        while (end > 0 && Character.isWhitespace(chars[end - 1])) {
+            end--;
+        }
+        if (end == 0) {
+            if (rest == total) {
+                // only whitespace: dropped like trailing whitespace (an indent
+                // this long is lost) rather than written as an empty line
+                length = 0;
+                continued = true;
+                return;
+            }
+            // a single word, with any indent
+            end = total;
+            rest = total;
+        }
+        length = end;
+        paragraph(true);
+        continued = true;
+        length = total - rest;
+        System.arraycopy(chars, rest, chars, 0, length);
+        if (positions != null) {
+            System.arraycopy(positions, rest, positions, 0, length);
+        }
+    }
+
+    /**
+     * Writes the buffered paragraph without a final line feed.
+     *
+     * @return true if a line was written
+     * @throws IOException on write failure
+     */
+    boolean finish() throws IOException {
+        boolean written = paragraph(false);
+        continued = false;
+        shrink();
+        return written;
+    }
+
+    private boolean paragraph(boolean newLine) throws IOException {
+        split();
+        lineWritten = false;
+        int a = 0;
+        for (int k = 0; k < words; k++) {
+            if (widths[k] > maxWidth && breakWords && next(starts[k], ends[k]) < ends[k]) {
+                fit(a, k);
+                a = breakWord(k);
+            }
+        }
+        fit(a, words);
+        boolean written = lineWritten;
+        if (newLine) {
+            engine.writeNewLine();
+        }
+        length = 0;
+        return written;
+    }
+
+    private void shrink() {
+        if (chars.length > WrapEngine.RETAINED_BUFFER_CHARS) {
+            chars = new char[64];
+            if (positions != null) {
+                positions = new int[64];
+            }
+        }
+        if (starts.length > WrapEngine.RETAINED_BUFFER_CHARS) {
+            starts = new int[16];
+            ends = new int[16];
+            widths = new double[16];
+            separators = new double[16];
+        }
+        if (prefix.length > WrapEngine.RETAINED_BUFFER_CHARS) {
+            prefix = new double[16];
+            cost = new double[16];
+            previous = new int[16];
+            candidates = new int[16];
+            from = new int[16];
+            breaks = new int[16];
+        }
+    }
+
+    /**
+     * Splits the paragraph into words at whitespace. Leading whitespace is kept
+     * as part of the first word (an indent), trailing whitespace is dropped.
+     */
+    private void split() {
+        words = 0;
+        int i = 0;
+        int separatorStart = 0;
+        while (i < length) {
+            int start = i;
+            while (i < length && Character.isWhitespace(chars[i])) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            if (words > 0) {
+                separatorStart = start;
+            } else {
+                // indent belongs to the first word
+                start = 0;
+            }
+            int wordStart = i;
+            while (i < length && !Character.isWhitespace(chars[i])) {
+                i++;
+            }
+            ensureWordCapacity(words + 1);
+            starts[words] = words == 0 ? start : wordStart;
+            ends[words] = i;
+            widths[words] = wordWidth.width(chars, starts[words], i);
+            separators[words] = words == 0 ? 0
+                    : wordWidth.width(chars, separatorStart, wordStart);
+            words++;
+        }
+    }
+
+    /**
+     * Writes all but the last piece of word {@code k} on lines of their own and
+     * makes the last piece the first word of the next segment.
+     *
+     * @return index of the word that starts the next segment
+     */
+    private int breakWord(int k) throws IOException {
+        int start = starts[k];
+        int end = ends[k];
+        double hyphen = insertHyphens ? hyphenWidth() : 0;
+        double rest;
+        while (true) {
+            // pieces hold at least one code point and never split a surrogate pair
+            int n = next(start, end);
+            if (n == end) {
+                rest = width.width(chars, start, end);
+                break;
+            }
+            // w is the width of [start, m), only ever one code point past the piece
+            // [start, n) so the rest of the word is not measured once per line
+            int m = next(n, end);
+            double w = width.width(chars, start, m);
+            while (m < end && w + hyphen <= maxWidth) {
+                n = m;
+                m = next(m, end);
+                w = width.width(chars, start, m);
+            }
+            // the piece can't take the hyphen but the rest of the word may still fit
+            // without one
+            while (m < end && w <= maxWidth) {
+                m = next(m, end);
+                w = width.width(chars, start, m);
+            }
+            if (m == end && w <= maxWidth) {
+                rest = w;
+                break;
+            }
+            writeLineBreak();
+            engine.writeRange(chars, positions, start, n);
+            if (insertHyphens) {
+                engine.writeHyphen();
+            }
+            lineWritten = true;
+            start = n;
+        }
+        // the rest of the word is fitted with the words that follow
+        starts[k] = start;
+        widths[k] = rest;
+        separators[k] = 0;
+        return k;
+    }
+
+    private double hyphenWidth() {
+        if (Double.isNaN(hyphenWidth)) {
+            hyphenWidth = width.width(new char[] { '-' }, 0, 1);
+        }
+        return hyphenWidth;
+    }
+
+    private int next(int i, int end) {
+        if (i + 1 < end && Character.isHighSurrogate(chars[i])
+                && Character.isLowSurrogate(chars[i + 1])) {
+            return i + 2;
+        } else {
+            return i + 1;
+        }
+    }
+
+    /**
+     * Chooses breaks for words {@code [a, b)} and writes the lines.
+     */
+    private void fit(int a, int b) throws IOException {
+        int m = b - a;
+        if (m == 0) {
+            return;
+        }
+        ensureSegmentCapacity(m + 1);
+        // prefix[i] is the width of words [a, a + i) with their separators
+        prefix[0] = 0;
+        for (int i = 1; i <= m; i++) {
+            int k = a + i - 1;
+            prefix[i] = prefix[i - 1] + widths[k] + (i > 1 ? separators[k] : 0);
+        }
+        cost[0] = 0;
+        int head = 0;
+        int tail = 0;
+        candidates[tail] = 0;
+        from[tail] = 1;
+        tail++;
+        for (int i = 1; i <= m; i++) {
+            while (tail - head >= 2 && from[head + 1] <= i) {
+                head++;
+            }
+            int j = candidates[head];
+            cost[i] = cost[j] + lineCost(a, j, i);
+            previous[i] = j;
+            if (i == m) {
+                break;
+            }
+            // i as the start of a line beats every earlier candidate from some
+            // break point on (Monge property), find where
+            while (tail > head) {
+                int k = Math.max(from[tail - 1], i + 1);
+                if (beats(a, i, candidates[tail - 1], k)) {
+                    tail--;
+                } else {
+                    break;
+                }
+            }
+            if (tail == head) {
+                candidates[tail] = i;
+                from[tail] = i + 1;
+                tail++;
+            } else {
+                int other = candidates[tail - 1];
+                int lo = Math.max(from[tail - 1], i + 1);
+                int hi = m + 1;
+                // i does not beat other at lo, find the first k in (lo, m] where
+                // it does (hi if none)
+                while (hi - lo > 1) {
+                    int mid = (lo + hi) >>> 1;
+                    if (beats(a, i, other, mid)) {
+                        hi = mid;
+                    } else {
+                        lo = mid;
+                    }
+                }
+                if (hi <= m) {
+                    candidates[tail] = i;
+                    from[tail] = hi;
+                    tail++;
+                }
+            }
+        }
+        // the last line costs nothing if it fits
+        int best = m - 1;
+        for (int j = m - 1; j >= 0; j--) {
+            if (m - j > 1 && lineWidth(a, j, m) > maxWidth) {
+                break;
+            }
+            if (cost[j] < cost[best]) {
+                best = j;
+            }
+        }
+        int lines = 0;
+        breaks[lines++] = m;
+        for (int j = best; j > 0; j = previous[j]) {
+            breaks[lines++] = j;
+        }
+        int start = 0;
+        for (int t = lines - 1; t >= 0; t--) {
+            int end = breaks[t];
+            writeLineBreak();
+            engine.writeRange(chars, positions, starts[a + start], ends[a + end - 1]);
+            lineWritten = true;
+            start = end;
+        }
+    }
+
+    private void writeLineBreak() throws IOException {
+        if (lineWritten) {
+            engine.writeNewLine();
+        }
+    }
+
+    private boolean beats(int a, int i, int j, int k) {
+        return cost[i] + lineCost(a, i, k) <= cost[j] + lineCost(a, j, k);
+    }
+
+    private double lineWidth(int a, int j, int i) {
+        // the separator before the first word of the line is not part of it
+        return prefix[i] - prefix[j] - (j > 0 ? separators[a + j] : 0);
+    }
+
+    private double lineCost(int a, int j, int i) {
+        double slack = maxWidth - lineWidth(a, j, i);
+        if (slack >= 0) {
+            return slack * slack;
+        } else if (i - j == 1) {
+            // a single word wider than the line has to go somewhere
+            return 0;
+        } else {
+            return INFINITY;
+        }
+    }
+
+    private void ensureWordCapacity(int n) {
+        if (n > starts.length) {
+            int size = Math.max(n, starts.length * 2);
+            starts = Arrays.copyOf(starts, size);
+            ends = Arrays.copyOf(ends, size);
+            widths = Arrays.copyOf(widths, size);
+            separators = Arrays.copyOf(separators, size);
+        }
+    }
+
+    private void ensureSegmentCapacity(int n) {
+        if (n > prefix.length) {
+            int size = Math.max(n, prefix.length * 2);
+            prefix = new double[size];
+            cost = new double[size];
+            previous = new int[size];
+            candidates = new int[size];
+            from = new int[size];
+            breaks = new int[size];
+        }
+    }
+
+}
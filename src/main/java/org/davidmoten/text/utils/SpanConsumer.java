@@ -0,0 +1,28 @@
+package org.davidmoten.text.utils;
+
+import java.io.IOException;
+
+/**
+ * Receives wrapped output from the engine as ranges of input offsets rather
+ * than as text. A line is at most one span, optionally followed by a hyphen,
+ * and is ended by {@link #newLine(int)} (or by {@link #finish()} for the last
+ * line). A span may include carriage returns that are not part of the wrapped
+ * text.
+ */
+interface SpanConsumer {
+
+    void span(int start, int end) throws IOException;
+
+    void hyphen() throws IOException;
+
+    /**
+     * Ends the current line.
+     *
+     * @param position input offset of the new line character (or the next
+     *                 character for a line ended by wrapping)
+     * @throws IOException on write failure
+     */
+    void newLine(int position) throws IOException;
+
+    void finish() throws IOException;
+}
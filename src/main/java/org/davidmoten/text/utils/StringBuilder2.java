@@ -7,6 +7,9 @@ final class StringBuilder2 implements CharSequence {
     private char[] chars;
     private int length;
 
+    // the array does not grow beyond this unless more is needed
+    private int maxCapacity = Integer.MAX_VALUE;
+
     StringBuilder2(String s) {
         this(s.toCharArray(), s.length());
     }
@@ -55,13 +58,33 @@ final class StringBuilder2 implements CharSequence {
     }
 
     private int newSize(int len) {
-        int newSize = chars.length * 2;
+        int newSize = (int) Math.min((long) chars.length * 2, maxCapacity);
         if (newSize < length + len) {
             newSize = length + len;
         }
         return newSize;
     }
 
+    void maxCapacity(int maxCapacity) {
+        this.maxCapacity = maxCapacity;
+    }
+
+    /**
+     * Replaces the internal array with a smaller one if it has grown beyond
+     * {@code retained} chars and the content is small enough.
+     *
+     * @param retained largest array kept
+     * @return true if the array was replaced
+     */
+    boolean shrink(int retained) {
+        if (chars.length > retained && length <= retained / 2) {
+            chars = Arrays.copyOf(chars, Math.max(16, length * 2));
+            return true;
+        } else {
+            return false;
+        }
+    }
+
     public void setLength(int length) {
         this.length = length;
     }
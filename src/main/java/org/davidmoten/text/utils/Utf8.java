@@ -0,0 +1,66 @@
+package org.davidmoten.text.utils;
+
+/**
+ * UTF-8 validation shared by the byte input and byte output of the engine so
+ * that both agree on where every character starts and ends.
+ */
+final class Utf8 {
+
+    private Utf8() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the number of bytes of the well-formed UTF-8 sequence starting at
+     * {@code bytes[i]} or 0 if the sequence is malformed (overlong, an encoded
+     * surrogate, out of range or truncated by {@code end}).
+     *
+     * @param bytes utf-8 bytes
+     * @param i     index of the first byte of the sequence
+     * @param end   index after the last byte that may be read
+     * @return length of the sequence (1 to 4) or 0 if malformed
+     */
+    static int sequenceLength(byte[] bytes, int i, int end) {
+        int b0 = bytes[i];
+        if (b0 >= 0) {
+            return 1;
+        } else if ((b0 & 0xE0) == 0xC0) {
+            return (b0 & 0xFF) >= 0xC2 && i + 1 < end && isContinuation(bytes[i + 1]) ? 2 : 0;
+        } else if ((b0 & 0xF0) == 0xE0) {
+            if (i + 2 >= end || !isContinuation(bytes[i + 1])
+                    || !isContinuation(bytes[i + 2])) {
+                return 0;
+            }
+            int cp = decode3(bytes, i);
+            return cp >= 0x800 && !Character.isSurrogate((char) cp) ? 3 : 0;
+        } else if ((b0 & 0xF8) == 0xF0) {
+            if (i + 3 >= end || !isContinuation(bytes[i + 1]) || !isContinuation(bytes[i + 2])
+                    || !isContinuation(bytes[i + 3])) {
+                return 0;
+            }
+            int cp = decode4(bytes, i);
+            return cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT && cp <= Character.MAX_CODE_POINT
+                    ? 4
+                    : 0;
+        } else {
+            return 0;
+        }
+    }
+
+    static int decode2(byte[] bytes, int i) {
+        return ((bytes[i] & 0x1F) << 6) | (bytes[i + 1] & 0x3F);
+    }
+
+    static int decode3(byte[] bytes, int i) {
+        return ((bytes[i] & 0x0F) << 12) | ((bytes[i + 1] & 0x3F) << 6) | (bytes[i + 2] & 0x3F);
+    }
+
+    static int decode4(byte[] bytes, int i) {
+        return ((bytes[i] & 0x07) << 18) | ((bytes[i + 1] & 0x3F) << 12)
+                | ((bytes[i + 2] & 0x3F) << 6) | (bytes[i + 3] & 0x3F);
+    }
+
+    static boolean isContinuation(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+}
@@ -0,0 +1,131 @@
+package org.davidmoten.text.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes wrapped UTF-8 output by copying byte ranges of the UTF-8 input (as
+ * positioned by {@link WrapEngine#acceptUtf8(byte[], int, int)}) so no text is
+ * re-encoded. Carriage returns are dropped and malformed bytes are replaced
+ * with the encoding of U+FFFD (an encoded surrogate is malformed, so the input
+ * never holds an unpaired surrogate).
+ *
+ * <p>
+ * A 4 byte sequence is a surrogate pair to the engine, which never breaks a
+ * line between the two halves, so a span starts and ends on whole sequences.
+ * Should a span ever start or end inside a sequence the lone half is written as
+ * {@code '?'}, as {@link java.io.OutputStreamWriter} does for unpaired
+ * surrogates, rather than as a truncated sequence.
+ */
+final class Utf8SpanWriter implements SpanConsumer {
+
+    private static final byte[] REPLACEMENT = { (byte) 0xEF, (byte) 0xBF, (byte) 0xBD };
+
+    private final byte[] source;
+    private final int sourceStart;
+    private final int sourceEnd;
+    private final OutputStream out;
+    private final byte[] newLine;
+    private final byte[] buffer;
+    private int count;
+
+    Utf8SpanWriter(byte[] source, int sourceStart, int sourceEnd, OutputStream out,
+            String newLine, int bufferSize) {
+        this.source = source;
+        this.sourceStart = sourceStart;
+        this.sourceEnd = sourceEnd;
+        this.out = out;
+        this.newLine = newLine.getBytes(StandardCharsets.UTF_8);
+        // room for the longest single write (a replacement or a new line)
+        this.buffer = new byte[Math.max(bufferSize, Math.max(4, this.newLine.length))];
+    }
+
+    @Override
+    public void span(int start, int end) throws IOException {
+        int from = start;
+        // not reached while pairs are kept whole, guards against invalid output
+        if (isLowSurrogate(from)) {
+            put((byte) '?');
+            from += 3;
+        }
+        int last = end - 1;
+        if (isLowSurrogate(last)) {
+            copy(from, last + 3);
+        } else {
+            int n = Utf8.sequenceLength(source, last, sourceEnd);
+            if (n == 4) {
+                // ends with a high surrogate, likewise not reached
+                copy(from, last);
+                put((byte) '?');
+            } else {
+                copy(from, last + Math.max(n, 1));
+            }
+        }
+    }
+
+    @Override
+    public void hyphen() throws IOException {
+        put((byte) '-');
+    }
+
+    @Override
+    public void newLine(int position) throws IOException {
+        ensureCapacity(newLine.length);
+        System.arraycopy(newLine, 0, buffer, count, newLine.length);
+        count += newLine.length;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private boolean isLowSurrogate(int i) {
+        return i > sourceStart && Utf8.isContinuation(source[i])
+                && Utf8.sequenceLength(source, i - 1, sourceEnd) == 4;
+    }
+
+    private void copy(int from, int to) throws IOException {
+        byte[] s = source;
+        int i = from;
+        while (i < to) {
+            byte b = s[i];
+            if (b >= 0) {
+                if (b != '\r') {
+                    put(b);
+                }
+                i++;
+            } else {
+                int n = Utf8.sequenceLength(s, i, sourceEnd);
+                if (n == 0) {
+                    ensureCapacity(REPLACEMENT.length);
+                    System.arraycopy(REPLACEMENT, 0, buffer, count, REPLACEMENT.length);
+                    count += REPLACEMENT.length;
+                    i++;
+                } else {
+                    ensureCapacity(n);
+                    System.arraycopy(s, i, buffer, count, n);
+                    count += n;
+                    i += n;
+                }
+            }
+        }
+    }
+
+    private void put(byte b) throws IOException {
+        if (count == buffer.length) {
+            finish();
+        }
+        buffer[count++] = b;
+    }
+
+    private void ensureCapacity(int n) throws IOException {
+        if (count + n > buffer.length) {
+            finish();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package org.davidmoten.text.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+/**
+ * A bounded cache of word widths keyed on the characters of the word. Used by
+ * an optimal fit {@link Wrapper} built with
+ * {@link Wrapper.Builder#cacheWidths(int)} so an expensive width function (font
+ * metrics for example) is called once per distinct word or separator rather
+ * than once per occurrence. Greedy wrapping measures line prefixes, which seldom
+ * repeat, so it does not use the cache.
+ *
+ * <p>
+ * Entries are held in small sets of {@value #WAYS} selected by hash and
+ * evicted with the CLOCK algorithm within a set (an entry that has been hit
+ * since the clock hand last passed it survives). Sets are spread across
+ * independently locked segments so a shared {@code Wrapper} can be used from
+ * many threads. The width function is called outside any lock. Lookups do not
+ * allocate; a miss copies the measured characters once to store them.
+ *
+ * <p>
+ * The hit and miss counts are there to tune the size: a low hit rate on
+ * representative text means the cache is too small or the text does not
+ * repeat enough for caching to pay.
+ */
+public final class WidthCache {
+
+    private static final int WAYS = 4;
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final int setsPerSegment;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructor.
+     *
+     * @param maxEntries maximum number of widths held (rounded up to a multiple
+     *                   of the set size)
+     * @throws IllegalArgumentException if {@code maxEntries} is not positive
+     */
+    WidthCache(int maxEntries) {
+        Preconditions.checkArgument(maxEntries > 0, "maxEntries must be positive");
+        int sets = (maxEntries + WAYS - 1) / WAYS;
+        int segmentCount = Math.min(MAX_SEGMENTS, sets);
+        this.setsPerSegment = (sets + segmentCount - 1) / segmentCount;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(setsPerSegment);
+        }
+    }
+
+    /**
+     * Returns the number of widths that were found in the cache.
+     *
+     * @return number of hits
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of widths that had to be measured.
+     *
+     * @return number of misses
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the maximum number of widths this cache holds.
+     *
+     * @return capacity
+     */
+    public int capacity() {
+        return segments.length * setsPerSegment * WAYS;
+    }
+
+    /**
+     * Removes all entries and resets the hit and miss counts.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+        hits.reset();
+        misses.reset();
+    }
+
+    /**
+     * Returns a width function that consults this cache before calling
+     * {@code measure}.
+     *
+     * @param measure the function to cache
+     * @return caching width function
+     */
+    WidthFunction wrap(WidthFunction measure) {
+        return (chars, start, end) -> width(chars, start, end, measure);
+    }
+
+    double width(char[] chars, int start, int end, WidthFunction measure) {
+        int h = hash(chars, start, end);
+        Segment segment = segments[h % segments.length];
+        int set = (h / segments.length) % setsPerSegment;
+        synchronized (segment) {
+            int index = segment.find(set, h, chars, start, end);
+            if (index >= 0) {
+                hits.increment();
+                return segment.widths[index];
+            }
+        }
+        misses.increment();
+        double width = measure.width(chars, start, end);
+        char[] key = Arrays.copyOfRange(chars, start, end);
+        synchronized (segment) {
+            // another thread may have stored the same key meanwhile, a duplicate
+            // is harmless as it will be evicted in time
+            segment.put(set, h, key, width);
+        }
+        return width;
+    }
+
+    private static int hash(char[] chars, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + chars[i];
+        }
+        // spread the bits and make non-negative
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h & Integer.MAX_VALUE;
+    }
+
+    private static final class Segment {
+
+        // entry i of set s is at index s * WAYS + i
+        private final char[][] keys;
+        private final int[] hashes;
+        private final double[] widths;
+        private final boolean[] referenced;
+        private final byte[] hands;
+
+        Segment(int sets) {
+            this.keys = new char[sets * WAYS][];
+            this.hashes = new int[sets * WAYS];
+            this.widths = new double[sets * WAYS];
+            this.referenced = new boolean[sets * WAYS];
+            this.hands = new byte[sets];
+        }
+
+        int find(int set, int h, char[] chars, int start, int end) {
+            int base = set * WAYS;
+            for (int i = base; i < base + WAYS; i++) {
+                char[] key = keys[i];
+                if (key != null && hashes[i] == h && matches(key, chars, start, end)) {
+                    referenced[i] = true;
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void put(int set, int h, char[] key, double width) {
+            int base = set * WAYS;
+            int hand = hands[set];
+            int index;
+            while (true) {
+                index = base + hand;
+                hand = (hand + 1) % WAYS;
+                if (keys[index] == null || !referenced[index]) {
+                    break;
+                }
+                // second chance
+                referenced[index] = false;
+            }
+            hands[set] = (byte) hand;
+            keys[index] = key;
+            hashes[index] = h;
+            widths[index] = width;
+            referenced[index] = false;
+        }
+
+        synchronized void clear() {
+            Arrays.fill(keys, null);
+            Arrays.fill(referenced, false);
+            Arrays.fill(hands, (byte) 0);
+        }
+
+        private static boolean matches(char[] key, char[] chars, int start, int end) {
+            if (key.length != end - start) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != chars[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.davidmoten.text.utils;
+
+/**
+ * Measures the width of a range of characters. The wrapping engine calls this
+ * directly on its internal buffer so no {@link CharSequence} view is created
+ * and no {@link Number} is boxed per call. Implementations must not retain or
+ * modify {@code chars}.
+ */
+public interface WidthFunction {
+
+    /**
+     * Width is the number of characters. This is the default.
+     */
+    WidthFunction CHAR_COUNT = (chars, start, end) -> end - start;
+
+    /**
+     * Returns the width of {@code chars[start..end)}.
+     *
+     * @param chars buffer of characters
+     * @param start index of the first character to measure (inclusive)
+     * @param end   index after the last character to measure (exclusive)
+     * @return width of the range
+     */
+    double width(char[] chars, int start, int end);
+
+}
@@ -14,13 +14,12 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
-import com.github.davidmoten.guavamini.Preconditions;
 import com.github.davidmoten.guavamini.annotations.VisibleForTesting;
 
 public final class WordWrap {
@@ -33,10 +32,6 @@ public final class WordWrap {
 
     public static final Set<Character> SPECIAL_WORD_CHARS_SET_DEFAULT = toSet(SPECIAL_WORD_CHARS);
 
-    private static final Function<CharSequence, Number> STRING_WIDTH_DEFAULT = s -> s.length();
-
-    private static final String PUNCTUATION = "!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~";
-
     /**
      * Sets the source to be wrapped and returns a builder to specify more
      * parameters.
@@ -77,13 +72,13 @@ public final class WordWrap {
 
     /**
      * Sets the the source to be wrapped and returns a builder to specify more
-     * parameters. Uses an 8192 byte buffer for reading.
+     * parameters. The text is scanned directly without a {@link Reader}.
      * 
      * @param text text to be wrapped
      * @return builder
      */
     public static Builder from(CharSequence text) {
-        return from(new BufferedReader(new CharSequenceReader(text)), true);
+        return new Builder(text);
     }
 
     /**
@@ -134,25 +129,39 @@ public final class WordWrap {
         return new Builder(reader, close);
     }
 
+    /**
+     * Returns a builder for an immutable, thread-safe {@link Wrapper} that is not
+     * bound to any source and can be reused for any number of inputs.
+     * 
+     * @return builder for a reusable {@link Wrapper}
+     */
+    public static Wrapper.Builder configure() {
+        return new Wrapper.Builder();
+    }
+
     /**
      * Provides method chaining for specifying parameters to word wrap.
      */
     public static final class Builder {
 
+        // exactly one of text and reader is non-null
+        private final CharSequence text;
         private final Reader reader;
         private final boolean closeReader;
-        private Number maxWidth = 80;
-        private Function<? super CharSequence, ? extends Number> stringWidth = STRING_WIDTH_DEFAULT;
-        private Set<Character> extraWordChars = SPECIAL_WORD_CHARS_SET_DEFAULT;
-        private String newLine = "\n";
-        private boolean insertHyphens = true;
-        private boolean breakWords = true;
+        private final Wrapper.Builder options = new Wrapper.Builder();
 
         Builder(Reader reader, boolean closeReader) {
+            this.text = null;
             this.reader = reader;
             this.closeReader = closeReader;
         }
 
+        Builder(CharSequence text) {
+            this.text = text;
+            this.reader = null;
+            this.closeReader = false;
+        }
+
         /**
          * Sets the maximum width of a line using the {@code stringWidth} function. Word
          * wrapping/splitting will be attempted for lines with greater than
@@ -165,8 +174,7 @@ public final class WordWrap {
          *                                  zero
          */
         public Builder maxWidth(Number maxWidth) {
-            Preconditions.checkArgument(maxWidth.doubleValue() > 0);
-            this.maxWidth = maxWidth;
+            options.maxWidth(maxWidth);
             return this;
         }
 
@@ -180,7 +188,97 @@ public final class WordWrap {
          * @return this
          */
         public Builder stringWidth(Function<? super CharSequence, ? extends Number> stringWidth) {
-            this.stringWidth = stringWidth;
+            options.stringWidth(stringWidth);
+            return this;
+        }
+
+        /**
+         * Sets the width function used to determine if a line is at maximum width.
+         * The function is called directly on the engine's buffer and returns a
+         * primitive so nothing is allocated per call.
+         * 
+         * @param widthFunction function that returns the width of a range of
+         *                      characters
+         * @return this
+         */
+        public Builder widthFunction(WidthFunction widthFunction) {
+            options.widthFunction(widthFunction);
+            return this;
+        }
+
+        /**
+         * Sets an additive width model (character widths plus optional kerning) to be
+         * used instead of a string width function. Width checks are then constant
+         * time per character.
+         * 
+         * @param charWidthModel per character widths and kerning
+         * @return this
+         */
+        public Builder charWidthModel(CharWidthModel charWidthModel) {
+            options.charWidthModel(charWidthModel);
+            return this;
+        }
+
+        /**
+         * If true then each paragraph is wrapped to minimize raggedness rather
+         * than greedily. See {@link Wrapper.Builder#optimalFit(boolean)}.
+         * 
+         * @param optimalFit if true then minimize raggedness
+         * @return this
+         */
+        public Builder optimalFit(boolean optimalFit) {
+            options.optimalFit(optimalFit);
+            return this;
+        }
+
+        /**
+         * If true then the width of a string is assumed never to be less than
+         * the width of any of its prefixes so that breaks in long words can be
+         * found with fewer width calls. Has no effect with
+         * {@link #optimalFit(boolean)}. See
+         * {@link Wrapper.Builder#monotoneWidth(boolean)}.
+         * 
+         * @param monotoneWidth if true then widths are assumed monotone
+         * @return this
+         */
+        public Builder monotoneWidth(boolean monotoneWidth) {
+            options.monotoneWidth(monotoneWidth);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of chars held while wrapping. See
+         * {@link Wrapper.Builder#maxBufferChars(int)}.
+         * 
+         * @param maxBufferChars maximum number of chars buffered
+         * @return this
+         */
+        public Builder maxBufferChars(int maxBufferChars) {
+            options.maxBufferChars(maxBufferChars);
+            return this;
+        }
+
+        /**
+         * If true then a {@link BufferFullException} is thrown when the limit set
+         * by {@link #maxBufferChars(int)} is reached rather than forcing output.
+         * 
+         * @param failOnBufferFull if true then fail rather than force output
+         * @return this
+         */
+        public Builder failOnBufferFull(boolean failOnBufferFull) {
+            options.failOnBufferFull(failOnBufferFull);
+            return this;
+        }
+
+        /**
+         * Sets a listener to receive the {@link WrapStats} of the wrap. If not set
+         * nothing is counted or timed.
+         * 
+         * @param listener receives the stats of the wrap
+         * @return this
+         */
+        public Builder listener(WrapListener listener) {
+            options.listener(listener);
             return this;
         }
 
@@ -192,7 +290,7 @@ public final class WordWrap {
          * @return this
          */
         public Builder newLine(String newLine) {
-            this.newLine = newLine;
+            options.newLine(newLine);
             return this;
         }
 
@@ -205,7 +303,7 @@ public final class WordWrap {
          * @return this
          */
         public Builder extraWordChars(Set<Character> extraWordChars) {
-            this.extraWordChars = extraWordChars;
+            options.extraWordChars(extraWordChars);
             return this;
         }
 
@@ -218,7 +316,8 @@ public final class WordWrap {
          * @return this
          */
         public Builder extraWordChars(String extraWordChars) {
-            return extraWordChars(toSet(extraWordChars));
+            options.extraWordChars(extraWordChars);
+            return this;
         }
 
         /**
@@ -229,8 +328,7 @@ public final class WordWrap {
          * @return this
          */
         public Builder includeExtraWordChars(String includeWordChars) {
-            prepareExtraWordCharsForMutation();
-            this.extraWordChars.addAll(toSet(includeWordChars));
+            options.includeExtraWordChars(includeWordChars);
             return this;
         }
 
@@ -242,22 +340,10 @@ public final class WordWrap {
          * @return this
          */
         public Builder excludeExtraWordChars(String excludeWordChars) {
-            prepareExtraWordCharsForMutation();
-            this.extraWordChars.removeAll(toSet(excludeWordChars));
+            options.excludeExtraWordChars(excludeWordChars);
             return this;
         }
 
-        /**
-         * If we want to mutate the default extraWordChars set then we replace it with a mutable
-         * set just for use by this builder. This is done lazily as a perf enhancement
-         * (reduces allocations if a lot of calls to wrap are being made).
-         */
-        private void prepareExtraWordCharsForMutation() {
-            if (this.extraWordChars == SPECIAL_WORD_CHARS_SET_DEFAULT) {
-                this.extraWordChars = new HashSet<>(SPECIAL_WORD_CHARS_SET_DEFAULT);
-            }
-        }
-
         /**
          * Sets if to break words using a hyphen character. If set to false then no
          * breaking character will be used.
@@ -266,7 +352,7 @@ public final class WordWrap {
          * @return this
          */
         public Builder insertHyphens(boolean insertHyphens) {
-            this.insertHyphens = insertHyphens;
+            options.insertHyphens(insertHyphens);
             return this;
         }
 
@@ -279,7 +365,7 @@ public final class WordWrap {
          * @return this
          */
         public Builder breakWords(boolean breakWords) {
-            this.breakWords = breakWords;
+            options.breakWords(breakWords);
             return this;
         }
 
@@ -290,11 +376,13 @@ public final class WordWrap {
          * @param out output for wrapped text
          */
         public void wrap(Writer out) {
+            Wrapper wrapper = options.build();
+            if (text != null) {
+                wrapper.wrap(text, out);
+                return;
+            }
             try {
-                wordWrap(reader, out, newLine, maxWidth, stringWidth, extraWordChars, insertHyphens,
-                        breakWords);
-            } catch (IOException e) {
-                throw new IORuntimeException(e);
+                wrapper.wrap(reader, out);
             } finally {
                 if (closeReader) {
                     close(reader);
@@ -303,36 +391,51 @@ public final class WordWrap {
         }
         
         public List<String> wrapToList() {
-            List<String> lines = new ArrayList<>();
-            StringBuilder b = new StringBuilder();
-            boolean[] building = new boolean[1];
-            wrap(new LineConsumer() {
-
-                @Override
-                public void write(char[] chars, int offset, int length) throws IOException {
-                    building[0] = true;
-                    b.append(chars, offset, length);
-                }
-                
-                @Override
-                public void writeNewLine() throws IOException {
-                    lines.add(b.toString());
-                    b.setLength(0);
-                    building[0] = false;
+            Wrapper wrapper = options.build();
+            if (text != null) {
+                return wrapper.wrapToList(text);
+            }
+            try {
+                return wrapper.wrapToList(reader);
+            } finally {
+                if (closeReader) {
+                    close(reader);
                 }
-            });
-            if (building[0]) {
-                lines.add(b.toString());
             }
-            return lines;
         }
         
+        /**
+         * Returns the wrapped lines as a lazily evaluated stream. The source is
+         * read only as far as needed to produce each line so memory use is bounded
+         * by the longest line and a short-circuiting operation (like
+         * {@code limit} or {@code findFirst}) stops reading the source early. If
+         * the source is a reader opened by this builder (from a file, stream or
+         * resource) then close the stream (for example with try-with-resources)
+         * to close the reader.
+         * 
+         * @return wrapped lines
+         */
+        public Stream<String> lines() {
+            Wrapper wrapper = options.build();
+            if (text != null) {
+                return wrapper.lines(text);
+            }
+            Stream<String> lines = wrapper.lines(reader);
+            if (closeReader) {
+                return lines.onClose(() -> close(reader));
+            } else {
+                return lines;
+            }
+        }
+
         public void wrap(LineConsumer consumer) {
+            Wrapper wrapper = options.build();
+            if (text != null) {
+                wrapper.wrap(text, consumer);
+                return;
+            }
             try {
-                wordWrap(reader, consumer, maxWidth, stringWidth, extraWordChars, insertHyphens,
-                        breakWords);
-            } catch (IOException e) {
-                throw new IORuntimeException(e);
+                wrapper.wrap(reader, consumer);
             } finally {
                 if (closeReader) {
                     close(reader);
@@ -392,6 +495,9 @@ public final class WordWrap {
          * @return wrapped text
          */
         public String wrap() {
+            if (text != null) {
+                return options.build().wrap(text);
+            }
             // close not required
            StringWriter out = new StringWriter();
            wrap(out);
@@ -408,7 +514,7 @@ public final class WordWrap {
         }
     }
 
-    private static Set<Character> toSet(String chars) {
+    static Set<Character> toSet(String chars) {
         Set<Character> set = new HashSet<Character>();
         for (int i = 0; i < chars.length(); i++) {
             set.add(chars.charAt(i));
@@ -416,137 +522,6 @@ public final class WordWrap {
         return set;
     }
     
-    static void wordWrap(Reader in, Writer out, String newLine, Number maxWidth,
-            Function<? super CharSequence, ? extends Number> stringWidth,
-            Set<Character> extraWordChars, boolean insertHyphens, boolean breakWords)
-            throws IOException {
-        LineConsumer consumer = new LineConsumer() {
-
-            @Override
-            public void write(String s) throws IOException {
-                out.write(s);
-            }
-
-            @Override
-            public void write(char[] chars, int start, int length) throws IOException {
-                out.write(chars, start, length);
-            }
-
-            @Override
-            public void writeNewLine() throws IOException {
-                out.write(newLine);
-            }
-            
-        };
-        wordWrap(in, consumer,  maxWidth, stringWidth, extraWordChars, insertHyphens, breakWords);
-    }
-    
-    static void wordWrap(Reader in, LineConsumer out, Number maxWidth,
-            Function<? super CharSequence, ? extends Number> stringWidth,
-            Set<Character> extraWordChars, boolean insertHyphens, boolean breakWords)
-            throws IOException {
-        StringBuilder2 line = new StringBuilder2();
-        StringBuilder2 word = new StringBuilder2();
-        CharSequence lineAndWordRightTrim = concatRightTrim(line, word);
-        double maxWidthDouble = maxWidth.doubleValue();
-        boolean broken = false;
-        boolean isWordCharacter = false;
-        boolean previousWasPunctuation = false;
-        while (true) {
-            int c = in.read();
-            if (c == -1) {
-                break;
-            }
-            char ch = (char) c;
-            isWordCharacter = Character.isLetter(ch) || extraWordChars.contains(ch);
-            if (ch == '\n') {
-                line.append(word);
-                if (tooLong(stringWidth, line, maxWidthDouble)) {
-                    line.rightTrim();
-                }
-                if (!isWhitespace(line)) {
-                    out.write(line.internalArray(), 0, line.length());
-                }
-                out.writeNewLine();
-                word.setLength(0);
-                line.setLength(0);
-                broken = false;
-            } else if (ch == '\r') {
-                // ignore carriage return
-            } else if (isWordCharacter && !previousWasPunctuation) {
-                word.append(ch);
-                if (broken && line.length() == 0) {
-                    leftTrim(word);
-                }
-                if (tooLong(stringWidth, lineAndWordRightTrim, maxWidthDouble)) {
-                    if (line.length() > 0) {
-                        writeLine(out, line);
-                        leftTrim(word);
-                        if (tooLong(stringWidth, word, maxWidthDouble)) {
-                            if (breakWords) {
-                                writeBrokenWord(out, word, insertHyphens);
-                            } else {
-                                broken = true;
-                            }
-                        } else {
-                            broken = true;
-                        }
-                    } else {
-                        if (breakWords) {
-                            writeBrokenWord(out, word, insertHyphens);
-                        } else {
-                            broken = true;
-                        }
-                    }
-                }
-            } else {
-                if (word.length() > 0 && !isWhitespace(word)) {
-                    appendWordToLine(line, word);
-                    if (broken) {
-                        leftTrim(line);
-                    }
-                }
-                word.append(ch);
-                if (tooLong(stringWidth, lineAndWordRightTrim, maxWidthDouble)) {
-                    if (!isWhitespace(line)) {
-                        writeLine(out, line);
-                    } else {
-                        line.setLength(0);
-                    }
-                    broken = true;
-                }
-            }
-            previousWasPunctuation = isPunctuation(ch) && !extraWordChars.contains(ch);
-        }
-        if (line.length() > 0) {
-            String s = line.toString() + word.toString();
-            if (broken) {
-                s = leftTrim(s);
-            }
-            out.write(s);
-        } else {
-            if (broken) {
-                leftTrim(word);
-            }
-            if (!isWhitespace(word)) {
-                out.write(word.internalArray(), 0, word.length());
-            }
-        }
-    }
-
-    private static CharSequence concatRightTrim(CharSequence a, CharSequence b) {
-        return new CharSequenceConcatRightTrim(a, b);
-    }
-
-    private static boolean isPunctuation(char ch) {
-        return PUNCTUATION.indexOf(ch) != -1;
-    }
-
-    private static boolean tooLong(Function<? super CharSequence, ? extends Number> stringWidth,
-            CharSequence s, double maxWidthDouble) {
-        return stringWidth.apply(s).doubleValue() > maxWidthDouble;
-    }
-
     @VisibleForTesting
     static CharSequence rightTrim(CharSequence s) {
         int i = s.length();
@@ -587,42 +562,4 @@ public final class WordWrap {
             word.delete(0, i);
         }
     }
-
-    private static String leftTrim(String s) {
-        StringBuilder2 b = new StringBuilder2(s);
-        leftTrim(b);
-        return b.toString();
-    }
-
-    private static void appendWordToLine(StringBuilder2 line, StringBuilder2 word) {
-        line.append(word);
-        word.setLength(0);
-    }
-
-    private static void writeBrokenWord(LineConsumer out, StringBuilder2 word, boolean insertHyphens) throws IOException {
-        // to be really thorough we'd check the new stringWidth with '-' but let's not
-        // bother for now
-        String x;
-        if (insertHyphens && word.length() > 2
-                && !isWhitespace((x = word.substring(0, word.length() - 2)))) {
-            out.write(x);
-            out.write("-");
-            out.writeNewLine();
-            word.delete(0, word.length() - 2);
-        } else {
-            String prefix = word.substring(0, word.length() - 1);
-            if (!isWhitespace(prefix)) {
-                out.write(prefix);
-            }
-            out.writeNewLine();
-            word.delete(0, word.length() - 1);
-        }
-    }
-
-    private static void writeLine(LineConsumer out, StringBuilder2 line)
-            throws IOException {
-        out.write(line.internalArray(), 0, line.length());
-        out.writeNewLine();
-        line.setLength(0);
-    }
 }
@@ -0,0 +1,926 @@
+package org.davidmoten.text.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * The word wrapping state machine. The line being built and the word being
+ * built share one buffer: {@code [0, wordStart)} is the line and
+ * {@code [wordStart, length)} is the word. When a {@link CharWidthModel} is
+ * used the widths of the line, the word and the line without trailing
+ * whitespace are kept as running sums so no width check needs to revisit the
+ * buffer.
+ *
+ * <p>
+ * Output is either written as text to a {@link LineConsumer} or passed as
+ * ranges of input offsets to a {@link SpanConsumer} (to record
+ * {@link LineBreaks} or to copy input bytes for example). In the latter case
+ * the input offset of every buffered character is kept in a parallel array.
+ */
+final class WrapEngine {
+
+    // written for a hyphen so that breaking a word allocates nothing
+    private static final char[] HYPHEN = { '-' };
+
+    // a buffer that has grown beyond this (for an unusually long line or
+    // paragraph) is replaced by a small one once it is empty
+    static final int RETAINED_BUFFER_CHARS = 8192;
+
+    private LineConsumer out;
+    private final SpanConsumer spans;
+    private final double maxWidth;
+    private final WidthFunction widthFunction;
+    private final CharWidthModel model;
+    private final CharClasses charClasses;
+    private final boolean insertHyphens;
+    private final boolean breakWords;
+
+    private final StringBuilder2 text = new StringBuilder2();
+
+    // start of the word in text, everything before is the line
+    private int wordStart;
+
+    // index after the last non-whitespace character in text (0 if none)
+    private int lastNonWhitespace;
+
+    // running sums (only maintained when model is non-null)
+    private double textWidth;
+    private double trimmedWidth;
+    private double wordWidth;
+
+    // input offset of each buffered character (only maintained when spans is
+    // non-null)
+    private int[] positions;
+
+    // input offset of the character being accepted
+    private int position;
+
+    private boolean broken;
+    private boolean previousWasPunctuation;
+
+    // a high surrogate waiting for its low surrogate (zero if none)
+    private char highSurrogate;
+    private int highSurrogatePosition;
+
+    // non-null if lines are to be fitted a paragraph at a time rather than
+    // greedily
+    private final OptimalFit optimal;
+
+    // true if the width of a prefix never exceeds the width of the whole so
+    // the pieces of a broken word can be found by search
+    private final boolean monotoneWidth;
+
+    // set while the rest of a broken word is being buffered without measuring
+    // every char, then the buffer is known to fit up to length measured and is
+    // next measured at length nextCheck
+    private boolean galloping;
+    private int measured;
+    private int nextCheck;
+    private int step;
+
+    // when the buffer reaches maxBufferChars it is written out as a line (or
+    // as part of one) unless failOnBufferFull
+    private final int maxBufferChars;
+    private final boolean failOnBufferFull;
+
+    // set while an unbreakable word wider than the line is being written in
+    // pieces as the buffer fills, streamStart and streamEnd are the input
+    // offsets of the part written so far (spans only)
+    private boolean streamed;
+    private int streamStart;
+    private int streamEnd;
+    private int pieceLength;
+
+    // null unless stats are wanted, then the counters below are maintained
+    private final WrapListener listener;
+    private long chars;
+    private long lines;
+    private long brokenWords;
+    private long hyphens;
+    private long widthCalls;
+    private long widthNanos;
+
+    WrapEngine(LineConsumer out, SpanConsumer spans, double maxWidth,
+            Function<? super CharSequence, ? extends Number> stringWidth,
+            WidthFunction widthFunction, WidthCache widthCache, CharWidthModel model,
+            CharClasses charClasses, boolean insertHyphens, boolean breakWords,
+            boolean optimalFit, boolean monotoneWidth, int maxBufferChars,
+            boolean failOnBufferFull, WrapListener listener) {
+        this.out = out;
+        this.spans = spans;
+        if (spans != null) {
+            this.positions = new int[16];
+        }
+        this.maxWidth = maxWidth;
+        WidthFunction measure;
+        if (stringWidth != null) {
+            // the segment is owned by this engine so the adapter needs no allocation
+            // per call and no synchronization
+            CharArraySegment segment = new CharArraySegment();
+            measure = (chars, start, end) -> stringWidth.apply(segment.set(chars, start, end))
+                    .doubleValue();
+        } else {
+            measure = widthFunction;
+        }
+        if (listener != null) {
+            // timed inside the cache so that only real measurements are counted
+            WidthFunction untimed = measure;
+            measure = (chars, start, end) -> {
+                long t = System.nanoTime();
+                double w = untimed.width(chars, start, end);
+                widthNanos += System.nanoTime() - t;
+                widthCalls++;
+                return w;
+            };
+        }
+        this.widthFunction = measure;
+        this.listener = listener;
+        this.model = model;
+        this.charClasses = charClasses;
+        this.insertHyphens = insertHyphens;
+        this.breakWords = breakWords;
+        if (optimalFit) {
+            WidthFunction w;
+            if (model != null) {
+                CharArraySegment segment = new CharArraySegment();
+                w = (chars, start, end) -> model.width(segment.set(chars, start, end));
+            } else {
+                w = measure;
+            }
+            // words and separators repeat so are worth caching, the pieces of a
+            // broken word are not
+            WidthFunction wordWidth = widthCache == null ? w : widthCache.wrap(w);
+            this.optimal = new OptimalFit(this, w, wordWidth, maxWidth, insertHyphens,
+                    breakWords, spans != null, maxBufferChars, failOnBufferFull);
+        } else {
+            this.optimal = null;
+        }
+        // a width model is already constant time per char
+        this.monotoneWidth = monotoneWidth && model == null && breakWords;
+        this.maxBufferChars = maxBufferChars;
+        this.failOnBufferFull = failOnBufferFull;
+        if (maxBufferChars != Integer.MAX_VALUE) {
+            // a surrogate pair may take the buffer one char over the limit
+            text.maxCapacity(maxBufferChars + 1);
+        }
+    }
+
+    /**
+     * Reads {@code in} to the end in chunks, wraps it and flushes the final line.
+     * State is carried across chunk boundaries so chunks can be any size.
+     *
+     * @param in         source text
+     * @param bufferSize number of chars to request from {@code in} per read
+     * @throws IOException on read or write failure
+     */
+    void wrap(Reader in, int bufferSize) throws IOException {
+        char[] buffer = new char[bufferSize];
+        while (true) {
+            int n = in.read(buffer, 0, buffer.length);
+            if (n == -1) {
+                break;
+            }
+            accept(buffer, 0, n);
+        }
+        finish();
+    }
+
+    /**
+     * Wraps {@code text} by scanning it directly and flushes the final line.
+     *
+     * @param text source text
+     * @throws IOException on write failure
+     */
+    void wrap(CharSequence text) throws IOException {
+        accept(text, 0, text.length());
+        finish();
+    }
+
+    void accept(CharSequence s, int start, int end) throws IOException {
+        if (s instanceof String) {
+            // keep the charAt call site monomorphic for the common case
+            String str = (String) s;
+            for (int i = start; i < end; i++) {
+                accept(str.charAt(i));
+            }
+        } else {
+            for (int i = start; i < end; i++) {
+                accept(s.charAt(i));
+            }
+        }
+    }
+
+    /**
+     * Discards all wrapping state so the engine can wrap another input while
+     * keeping its buffers.
+     *
+     * @param out receives the wrapped lines of the next input
+     */
+    void reset(LineConsumer out) {
+        this.out = out;
+        clear();
+        if (optimal != null) {
+            optimal.reset();
+        }
+        position = 0;
+        highSurrogate = 0;
+        galloping = false;
+        streamed = false;
+        broken = false;
+        previousWasPunctuation = false;
+        clearStats();
+    }
+
+    /**
+     * Returns the size of the array holding the line and word, for tests.
+     *
+     * @return buffer capacity in chars
+     */
+    int bufferCapacity() {
+        return text.internalArray().length;
+    }
+
+    /**
+     * Sets the input offset of the next character to be accepted. Only relevant
+     * when writing to a {@link SpanConsumer}.
+     *
+     * @param position input offset
+     */
+    void position(int position) {
+        this.position = position;
+    }
+
+    void accept(char[] chars, int offset, int length) throws IOException {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            accept(chars[i]);
+        }
+    }
+
+    /**
+     * Decodes {@code bytes[offset..offset + length)} as UTF-8 and accepts each
+     * char with its position set to the index of its first byte. The low
+     * surrogate of a supplementary character is given the index of the second
+     * byte so a span can tell the two halves apart. Every byte of a malformed
+     * sequence is accepted as U+FFFD.
+     *
+     * @param bytes  utf-8 bytes
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @throws IOException on write failure
+     */
+    void acceptUtf8(byte[] bytes, int offset, int length) throws IOException {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            int b0 = bytes[i];
+            position = i;
+            if (b0 >= 0) {
+                accept((char) b0);
+                i++;
+            } else {
+                int n = Utf8.sequenceLength(bytes, i, end);
+                if (n == 2) {
+                    accept((char) Utf8.decode2(bytes, i));
+                } else if (n == 3) {
+                    accept((char) Utf8.decode3(bytes, i));
+                } else if (n == 4) {
+                    int cp = Utf8.decode4(bytes, i);
+                    accept(Character.highSurrogate(cp));
+                    position = i + 1;
+                    accept(Character.lowSurrogate(cp));
+                } else {
+                    accept('\uFFFD');
+                    n = 1;
+                }
+                i += n;
+            }
+        }
+    }
+
+    void accept(char ch) throws IOException {
+        if (listener != null) {
+            chars++;
+        }
+        if (optimal != null) {
+            optimal.accept(ch, position);
+        } else if (highSurrogate == 0 && !Character.isSurrogate(ch)) {
+            // fast path, all of the BMP except surrogates
+            process(ch, position, (char) 0, charClasses.classOf(ch));
+        } else {
+            acceptSurrogate(ch);
+        }
+        position++;
+    }
+
+    /**
+     * Holds back a high surrogate until the next char arrives so that a
+     * surrogate pair is classified as one code point and is never split. A
+     * lone surrogate is processed as a char of its own.
+     */
+    private void acceptSurrogate(char ch) throws IOException {
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(ch)) {
+                process(high, highSurrogatePosition, ch,
+                        charClasses.classOf(Character.toCodePoint(high, ch)));
+                return;
+            }
+            process(high, highSurrogatePosition, (char) 0, charClasses.classOf(high));
+        }
+        if (Character.isHighSurrogate(ch)) {
+            highSurrogate = ch;
+            highSurrogatePosition = position;
+        } else {
+            process(ch, position, (char) 0, charClasses.classOf(ch));
+        }
+    }
+
+    /**
+     * Processes one code point, {@code ch} alone or the surrogate pair
+     * {@code ch, low} if {@code low} is non-zero.
+     *
+     * @param ch         a char or high surrogate
+     * @param chPosition input offset of {@code ch}
+     * @param low        low surrogate (at {@link #position}) or zero
+     * @param charClass  class of the code point
+     * @throws IOException on write failure
+     */
+    private void process(char ch, int chPosition, char low, int charClass) throws IOException {
+        boolean isWordCharacter = (charClass & CharClasses.WORD) != 0;
+        if (galloping) {
+            if (isWordCharacter && !previousWasPunctuation && !Character.isWhitespace(ch)) {
+                append(ch, chPosition, low);
+                if (text.length() >= nextCheck) {
+                    gallop();
+                }
+                previousWasPunctuation = (charClass & CharClasses.PUNCTUATION) != 0;
+                if (text.length() >= maxBufferChars) {
+                    bufferFull();
+                }
+                return;
+            }
+            settle();
+        }
+        if (streamed && ch != '\r'
+                && !(isWordCharacter && !previousWasPunctuation && !Character.isWhitespace(ch))) {
+            // the end of the unbreakable word ends its line
+            endStreamedLine();
+            clear();
+            if (ch != '\n') {
+                writeNewLine();
+                broken = true;
+            }
+        }
+        if (ch == '\n') {
+            wordToLine();
+            if (tooLong(lineWidth())) {
+                truncate(lastNonWhitespace);
+            }
+            if (!isWhitespace(0, text.length())) {
+                writeSpan(0, text.length());
+            }
+            writeNewLine();
+            clear();
+            broken = false;
+        } else if (ch == '\r') {
+            // ignore carriage return
+        } else if (isWordCharacter && !previousWasPunctuation) {
+            append(ch, chPosition, low);
+            boolean unbreakable = false;
+            if (broken && wordStart == 0) {
+                leftTrim(wordStart, text.length());
+                // the check below could only set broken again so an unbreakable
+                // word longer than a line is not re-measured on every char
+                unbreakable = !breakWords;
+            }
+            if (!unbreakable && tooLong(lineAndWordRightTrimWidth())) {
+                if (wordStart > 0) {
+                    writeLine();
+                    leftTrim(wordStart, text.length());
+                    if (tooLong(wordWidth())) {
+                        if (breakWords) {
+                            writeBrokenWord();
+                        } else {
+                            broken = true;
+                        }
+                    } else {
+                        broken = true;
+                    }
+                } else {
+                    if (breakWords) {
+                        writeBrokenWord();
+                    } else {
+                        broken = true;
+                    }
+                }
+            }
+        } else {
+            if (wordStart < text.length() && !isWhitespace(wordStart, text.length())) {
+                wordToLine();
+                if (broken) {
+                    leftTrim(0, wordStart);
+                }
+            }
+            append(ch, chPosition, low);
+            if (tooLong(lineAndWordRightTrimWidth())) {
+                if (!isWhitespace(0, wordStart)) {
+                    writeLine();
+                } else {
+                    delete(0, wordStart);
+                }
+                broken = true;
+            }
+        }
+        previousWasPunctuation = (charClass & CharClasses.PUNCTUATION) != 0;
+        if (text.length() >= maxBufferChars) {
+            bufferFull();
+        }
+    }
+
+    /**
+     * Empties the full buffer. An unbreakable word that already overflows its
+     * line is written as the start of that line (the line ends with the word
+     * as it would have anyway), otherwise the buffer is written as a line of
+     * its own without trailing whitespace.
+     */
+    private void bufferFull() throws IOException {
+        if (failOnBufferFull) {
+            throw new BufferFullException(maxBufferChars);
+        }
+        if (galloping) {
+            settle();
+            if (text.length() < maxBufferChars) {
+                return;
+            }
+        }
+        if (streamed || !breakWords && broken && wordStart == 0 && !containsWhitespace()
+                && tooLong(wordWidth())) {
+            int length = text.length();
+            if (spans == null) {
+                out.write(text.internalArray(), 0, length);
+            } else {
+                if (!streamed) {
+                    streamStart = positions[0];
+                }
+                streamEnd = positions[length - 1] + 1;
+            }
+            streamed = true;
+        } else {
+            if (lastNonWhitespace > 0) {
+                writeSpan(0, lastNonWhitespace);
+                writeNewLine();
+            }
+            broken = true;
+        }
+        clear();
+    }
+
+    /**
+     * Writes the rest of an unbreakable word whose start has been written
+     * already.
+     */
+    private void endStreamedLine() throws IOException {
+        int length = text.length();
+        if (spans == null) {
+            out.write(text.internalArray(), 0, length);
+        } else {
+            spans.span(streamStart, length > 0 ? positions[length - 1] + 1 : streamEnd);
+        }
+        streamed = false;
+    }
+
+    void finish() throws IOException {
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            process(high, highSurrogatePosition, (char) 0, charClasses.classOf(high));
+        }
+        if (galloping) {
+            settle();
+        }
+        if (streamed) {
+            endStreamedLine();
+            clear();
+            lines++;
+        }
+        if (optimal != null) {
+            if (optimal.finish()) {
+                lines++;
+            }
+        } else if (wordStart > 0) {
+            if (broken) {
+                leftTrim(0, text.length());
+            }
+            writeSpan(0, text.length());
+            lines++;
+        } else {
+            if (broken) {
+                leftTrim(wordStart, text.length());
+            }
+            if (!isWhitespace(wordStart, text.length())) {
+                writeSpan(wordStart, text.length());
+                lines++;
+            }
+        }
+        if (spans != null) {
+            spans.finish();
+        }
+        if (listener != null) {
+            listener.wrapped(
+                    new WrapStats(chars, lines, brokenWords, hyphens, widthCalls, widthNanos));
+        }
+        clearStats();
+    }
+
+    private void clearStats() {
+        chars = 0;
+        lines = 0;
+        brokenWords = 0;
+        hyphens = 0;
+        widthCalls = 0;
+        widthNanos = 0;
+    }
+
+    ////////////////////////////////////////////
+    // Widths
+    ////////////////////////////////////////////
+
+    private boolean tooLong(double width) {
+        return width > maxWidth;
+    }
+
+    /**
+     * Returns the width of the line and word concatenated with trailing
+     * whitespace removed. To match earlier behaviour a non-empty buffer that is
+     * all whitespace is measured as its first character.
+     */
+    private double lineAndWordRightTrimWidth() {
+        if (model != null) {
+            if (lastNonWhitespace > 0) {
+                return trimmedWidth;
+            } else if (text.length() > 0) {
+                return model.width(text.charAt(0));
+            } else {
+                return 0;
+            }
+        } else if (lastNonWhitespace > 0) {
+            return width(0, lastNonWhitespace);
+        } else {
+            return width(0, Math.min(1, text.length()));
+        }
+    }
+
+    private double lineWidth() {
+        if (model != null) {
+            return textWidth;
+        } else {
+            return width(0, text.length());
+        }
+    }
+
+    private double wordWidth() {
+        if (model != null) {
+            return wordWidth;
+        } else {
+            return width(wordStart, text.length());
+        }
+    }
+
+    private double width(int start, int end) {
+        return widthFunction.width(text.internalArray(), start, end);
+    }
+
+    ////////////////////////////////////////////
+    // Buffer mutations
+    ////////////////////////////////////////////
+
+    private void append(char ch, int chPosition, char low) {
+        append(ch, chPosition);
+        if (low != 0) {
+            append(low, position);
+        }
+    }
+
+    private void append(char ch, int chPosition) {
+        int n = text.length();
+        text.append(ch);
+        if (positions != null) {
+            if (n == positions.length) {
+                positions = Arrays.copyOf(positions, text.internalArray().length);
+            }
+            positions[n] = chPosition;
+        }
+        boolean whitespace = Character.isWhitespace(ch);
+        if (!whitespace) {
+            lastNonWhitespace = n + 1;
+        }
+        if (model != null) {
+            double w = model.width(ch);
+            if (n == 0) {
+                textWidth += w;
+            } else {
+                textWidth += w + model.kerning(text.charAt(n - 1), ch);
+            }
+            if (n == wordStart) {
+                wordWidth += w;
+            } else {
+                wordWidth += w + model.kerning(text.charAt(n - 1), ch);
+            }
+            if (!whitespace) {
+                trimmedWidth = textWidth;
+            }
+        }
+    }
+
+    private void wordToLine() {
+        wordStart = text.length();
+        wordWidth = 0;
+    }
+
+    private void delete(int start, int end) {
+        if (positions != null) {
+            System.arraycopy(positions, end, positions, start, text.length() - end);
+        }
+        text.delete(start, end);
+        if (wordStart >= end) {
+            wordStart -= end - start;
+        } else if (wordStart > start) {
+            wordStart = start;
+        }
+        recalculate();
+    }
+
+    private void truncate(int length) {
+        text.setLength(length);
+        if (wordStart > length) {
+            wordStart = length;
+        }
+        recalculate();
+    }
+
+    private void clear() {
+        text.setLength(0);
+        wordStart = 0;
+        lastNonWhitespace = 0;
+        textWidth = 0;
+        trimmedWidth = 0;
+        wordWidth = 0;
+        if (text.shrink(RETAINED_BUFFER_CHARS) && positions != null) {
+            positions = new int[text.internalArray().length];
+        }
+    }
+
+    /**
+     * Recalculates the derived state after characters have been removed from the
+     * buffer. Removals only happen when a line is written or trimmed so the cost
+     * is proportional to the output.
+     */
+    private void recalculate() {
+        int i = text.length();
+        while (i > 0 && Character.isWhitespace(text.charAt(i - 1))) {
+            i--;
+        }
+        lastNonWhitespace = i;
+        if (model != null) {
+            textWidth = 0;
+            trimmedWidth = 0;
+            wordWidth = 0;
+            for (int j = 0; j < text.length(); j++) {
+                char ch = text.charAt(j);
+                double w = model.width(ch);
+                textWidth += j == 0 ? w : w + model.kerning(text.charAt(j - 1), ch);
+                if (j == wordStart) {
+                    wordWidth += w;
+                } else if (j > wordStart) {
+                    wordWidth += w + model.kerning(text.charAt(j - 1), ch);
+                }
+                if (j == lastNonWhitespace - 1) {
+                    trimmedWidth = textWidth;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes leading whitespace from the given range of the buffer unless the
+     * range is entirely whitespace.
+     */
+    private void leftTrim(int start, int end) {
+        int i = start;
+        while (i < end && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        if (i < end && i > start) {
+            delete(start, i);
+        }
+    }
+
+    private boolean isWhitespace(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    ////////////////////////////////////////////
+    // Output
+    ////////////////////////////////////////////
+
+    private void writeBrokenWord() throws IOException {
+        int length = text.length();
+        int kept = writeBrokenWord(length);
+        if (monotoneWidth && !containsWhitespace()) {
+            // the rest of the word is buffered and measured at checkpoints rather
+            // than after every char
+            galloping = true;
+            measured = kept;
+            nextCheck = Math.max(length, kept + 1);
+            step = 1;
+        }
+    }
+
+    /**
+     * Writes the word up to {@code end} (where it first became too long) as a
+     * line of its own and leaves the last one or two code points before
+     * {@code end} (and anything after it) in the buffer.
+     *
+     * @return the number of chars kept from before {@code end}
+     */
+    private int writeBrokenWord(int end) throws IOException {
+        brokenWords++;
+        // to be really thorough we'd check the new stringWidth with '-' but let's not
+        // bother for now
+        // the last one or two code points move to the next line
+        int last = previousCodePoint(end);
+        int secondLast = last > wordStart ? previousCodePoint(last) : wordStart;
+        int cut;
+        if (insertHyphens && secondLast > wordStart && !isWhitespace(wordStart, secondLast)) {
+            writeSpan(wordStart, secondLast);
+            writeHyphen();
+            writeNewLine();
+            cut = secondLast;
+        } else {
+            if (!isWhitespace(wordStart, last)) {
+                writeSpan(wordStart, last);
+            }
+            writeNewLine();
+            cut = last;
+        }
+        delete(wordStart, cut);
+        return end - cut;
+    }
+
+    /**
+     * Measures the buffer (the rest of a broken word) at each checkpoint it has
+     * reached. The first checkpoint after a break is the length at which the
+     * previous piece became too long, then checkpoints are further apart each
+     * time the buffer fits. When a checkpoint is too long the piece is broken
+     * where checking every char would have broken it.
+     */
+    private void gallop() throws IOException {
+        while (text.length() >= nextCheck) {
+            int check = ceilCodePoint(nextCheck);
+            if (!tooLong(width(0, check))) {
+                measured = check;
+                nextCheck = check + step;
+                step *= 2;
+            } else {
+                int end = firstTooLong(measured, check);
+                int kept = writeBrokenWord(end);
+                measured = kept;
+                nextCheck = Math.max(end, kept + 1);
+                step = 1;
+            }
+        }
+    }
+
+    /**
+     * Checks whatever has been buffered since the last checkpoint and returns to
+     * checking every char.
+     */
+    private void settle() throws IOException {
+        while (text.length() > measured) {
+            nextCheck = text.length();
+            gallop();
+        }
+        galloping = false;
+    }
+
+    /**
+     * Returns the least code point boundary {@code end} in
+     * {@code (fits, tooLong]} such that {@code [0, end)} is too long, given that
+     * {@code [0, tooLong)} is too long and widths are monotone. Searches back
+     * from {@code tooLong} in growing steps then bisects.
+     */
+    private int firstTooLong(int fits, int tooLong) {
+        int d = 1;
+        while (true) {
+            int m = floorCodePoint(tooLong - d);
+            if (m <= fits) {
+                break;
+            } else if (tooLong(width(0, m))) {
+                tooLong = m;
+                d *= 2;
+            } else {
+                fits = m;
+                break;
+            }
+        }
+        while (true) {
+            int m = ceilCodePoint((fits + tooLong + 1) >>> 1);
+            if (m >= tooLong) {
+                return tooLong;
+            } else if (tooLong(width(0, m))) {
+                tooLong = m;
+            } else {
+                fits = m;
+            }
+        }
+    }
+
+    private int floorCodePoint(int index) {
+        return isInsidePair(index) ? index - 1 : index;
+    }
+
+    private int ceilCodePoint(int index) {
+        return isInsidePair(index) ? index + 1 : index;
+    }
+
+    private boolean isInsidePair(int index) {
+        return index > 0 && index < text.length()
+                && Character.isHighSurrogate(text.charAt(index - 1))
+                && Character.isLowSurrogate(text.charAt(index));
+    }
+
+    private boolean containsWhitespace() {
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the index in the word of the start of the code point ending at
+     * {@code index}.
+     */
+    private int previousCodePoint(int index) {
+        if (index - 2 >= wordStart && Character.isLowSurrogate(text.charAt(index - 1))
+                && Character.isHighSurrogate(text.charAt(index - 2))) {
+            return index - 2;
+        } else {
+            return index - 1;
+        }
+    }
+
+    private void writeLine() throws IOException {
+        writeSpan(0, wordStart);
+        writeNewLine();
+        delete(0, wordStart);
+    }
+
+    private void writeSpan(int start, int end) throws IOException {
+        if (spans == null) {
+            out.write(text.internalArray(), start, end - start);
+        } else if (end > start) {
+            spans.span(positions[start], positions[end - 1] + 1);
+        }
+    }
+
+    /**
+     * Writes {@code chars[start..end)} of a buffer other than the engine's own
+     * (that of {@link OptimalFit}) as part of the current line.
+     */
+    void writeRange(char[] chars, int[] positions, int start, int end) throws IOException {
+        if (spans == null) {
+            out.write(chars, start, end - start);
+        } else if (end > start) {
+            spans.span(positions[start], positions[end - 1] + 1);
+        }
+    }
+
+    void writeHyphen() throws IOException {
+        hyphens++;
+        if (spans == null) {
+            out.write(HYPHEN, 0, HYPHEN.length);
+        } else {
+            spans.hyphen();
+        }
+    }
+
+    void writeNewLine() throws IOException {
+        lines++;
+        if (spans == null) {
+            out.writeNewLine();
+        } else {
+            spans.newLine(position);
+        }
+    }
+}
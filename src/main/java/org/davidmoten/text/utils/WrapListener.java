@@ -0,0 +1,26 @@
+package org.davidmoten.text.utils;
+
+/**
+ * Receives the {@link WrapStats} of each completed wrap. Set with
+ * {@link Wrapper.Builder#listener(WrapListener)}. Counting is only done when a
+ * listener is set so there is no cost otherwise.
+ *
+ * <p>
+ * The listener is called on the thread that finished the wrap and may be
+ * called concurrently if the {@link Wrapper} is shared. A wrap split into
+ * chunks (by {@link Wrapper#wrapParallel(CharSequence)} for example) reports
+ * once per chunk and each string given to
+ * {@link Wrapper#wrapAll(Iterable)} reports separately. Use a
+ * {@link WrapStatsCollector} to add them up.
+ */
+@FunctionalInterface
+public interface WrapListener {
+
+    /**
+     * Called when a wrap completes.
+     *
+     * @param stats counts for the wrap
+     */
+    void wrapped(WrapStats stats);
+
+}
@@ -0,0 +1,87 @@
+package org.davidmoten.text.utils;
+
+import java.io.IOException;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+/**
+ * Push-based incremental wrapping for text that arrives in pieces (network
+ * frames or events for example). Each call to {@code feed} continues from the
+ * state left by the previous call and a line is written to the
+ * {@link LineConsumer} as soon as it is decided, so an unbounded stream can be
+ * wrapped without a thread blocking on a {@link java.io.Reader}. Call
+ * {@link #finish()} at the end of the text to write the final line.
+ *
+ * <p>
+ * Obtain an instance from {@link Wrapper#session(LineConsumer)}. A session is
+ * not thread-safe.
+ */
+public final class WrapSession {
+
+    private final WrapEngine engine;
+    private boolean finished;
+
+    WrapSession(WrapEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Wraps {@code chars[offset..offset + length)} as the next part of the text.
+     * The array is not retained.
+     *
+     * @param chars  next part of the text
+     * @param offset index of the first char
+     * @param length number of chars
+     * @return this
+     * @throws IllegalStateException if {@link #finish()} has been called
+     */
+    public WrapSession feed(char[] chars, int offset, int length) {
+        Preconditions.checkArgument(offset >= 0 && length >= 0 && offset + length <= chars.length,
+                "range out of bounds");
+        checkNotFinished();
+        try {
+            engine.accept(chars, offset, length);
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Wraps {@code text} as the next part of the text. The text is not retained.
+     *
+     * @param text next part of the text
+     * @return this
+     * @throws IllegalStateException if {@link #finish()} has been called
+     */
+    public WrapSession feed(CharSequence text) {
+        checkNotFinished();
+        try {
+            engine.accept(text, 0, text.length());
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Writes the final line (if any). No more text can be fed afterwards.
+     *
+     * @throws IllegalStateException if already called
+     */
+    public void finish() {
+        checkNotFinished();
+        finished = true;
+        try {
+            engine.finish();
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    private void checkNotFinished() {
+        if (finished) {
+            throw new IllegalStateException("session already finished");
+        }
+    }
+}
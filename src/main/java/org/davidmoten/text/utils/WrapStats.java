@@ -0,0 +1,106 @@
+package org.davidmoten.text.utils;
+
+/**
+ * Counts describing what the wrapping engine did for one or more wraps. Use
+ * them to spot expensive width functions (high {@link #widthNanos()} per
+ * {@link #widthCalls()}) and pathological inputs (many
+ * {@link #brokenWords()} relative to {@link #lines()}).
+ */
+public final class WrapStats {
+
+    private final long chars;
+    private final long lines;
+    private final long brokenWords;
+    private final long hyphens;
+    private final long widthCalls;
+    private final long widthNanos;
+
+    WrapStats(long chars, long lines, long brokenWords, long hyphens, long widthCalls,
+            long widthNanos) {
+        this.chars = chars;
+        this.lines = lines;
+        this.brokenWords = brokenWords;
+        this.hyphens = hyphens;
+        this.widthCalls = widthCalls;
+        this.widthNanos = widthNanos;
+    }
+
+    /**
+     * Returns the number of input characters processed (including carriage
+     * returns and line feeds).
+     *
+     * @return number of chars
+     */
+    public long chars() {
+        return chars;
+    }
+
+    /**
+     * Returns the number of lines written.
+     *
+     * @return number of lines
+     */
+    public long lines() {
+        return lines;
+    }
+
+    /**
+     * Returns the number of times a word too long for a line was broken across
+     * lines.
+     *
+     * @return number of broken words
+     */
+    public long brokenWords() {
+        return brokenWords;
+    }
+
+    /**
+     * Returns the number of hyphens inserted where words were broken.
+     *
+     * @return number of hyphens
+     */
+    public long hyphens() {
+        return hyphens;
+    }
+
+    /**
+     * Returns the number of calls to the {@code stringWidth} function or
+     * {@link WidthFunction} (calls answered by a {@link WidthCache} are not
+     * counted). Always zero when a {@link CharWidthModel} is used.
+     *
+     * @return number of width calls
+     */
+    public long widthCalls() {
+        return widthCalls;
+    }
+
+    /**
+     * Returns the total time spent in the calls counted by
+     * {@link #widthCalls()}.
+     *
+     * @return nanoseconds measuring widths
+     */
+    public long widthNanos() {
+        return widthNanos;
+    }
+
+    /**
+     * Returns the sum of these counts and {@code other}.
+     *
+     * @param other counts to add
+     * @return sum of counts
+     */
+    public WrapStats plus(WrapStats other) {
+        return new WrapStats(chars + other.chars, lines + other.lines,
+                brokenWords + other.brokenWords, hyphens + other.hyphens,
+                widthCalls + other.widthCalls, widthNanos + other.widthNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "WrapStats[chars=" + chars + ", lines=" + lines + ", brokenWords=" + brokenWords
+                + ", hyphens=" + hyphens + ", widthCalls=" + widthCalls + ", widthNanos="
+                + widthNanos + "]";
+    }
+
+}
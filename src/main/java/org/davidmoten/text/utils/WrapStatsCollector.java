@@ -0,0 +1,62 @@
+package org.davidmoten.text.utils;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link WrapListener} that adds up the stats of every wrap reported to it.
+ * Safe to share between threads and between wrappers.
+ */
+public final class WrapStatsCollector implements WrapListener {
+
+    private final LongAdder wraps = new LongAdder();
+    private final LongAdder chars = new LongAdder();
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder brokenWords = new LongAdder();
+    private final LongAdder hyphens = new LongAdder();
+    private final LongAdder widthCalls = new LongAdder();
+    private final LongAdder widthNanos = new LongAdder();
+
+    @Override
+    public void wrapped(WrapStats stats) {
+        wraps.increment();
+        chars.add(stats.chars());
+        lines.add(stats.lines());
+        brokenWords.add(stats.brokenWords());
+        hyphens.add(stats.hyphens());
+        widthCalls.add(stats.widthCalls());
+        widthNanos.add(stats.widthNanos());
+    }
+
+    /**
+     * Returns the number of wraps reported.
+     *
+     * @return number of wraps
+     */
+    public long wraps() {
+        return wraps.sum();
+    }
+
+    /**
+     * Returns the sum of the stats reported so far. Not an atomic snapshot if
+     * wraps are being reported concurrently.
+     *
+     * @return total stats
+     */
+    public WrapStats total() {
+        return new WrapStats(chars.sum(), lines.sum(), brokenWords.sum(), hyphens.sum(),
+                widthCalls.sum(), widthNanos.sum());
+    }
+
+    /**
+     * Resets all counts to zero.
+     */
+    public void reset() {
+        wraps.reset();
+        chars.reset();
+        lines.reset();
+        brokenWords.reset();
+        hyphens.reset();
+        widthCalls.reset();
+        widthNanos.reset();
+    }
+}
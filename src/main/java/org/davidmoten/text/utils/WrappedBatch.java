@@ -0,0 +1,152 @@
+package org.davidmoten.text.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The wrapped lines of a batch of texts returned by
+ * {@link Wrapper#wrapAll(Iterable)}. All lines of all items are stored in one
+ * char array with the end offset of every line in one int array so a batch of
+ * many short texts costs a handful of allocations rather than a list of
+ * strings per item. Line {@code j} of item {@code i} is the same as element
+ * {@code j} of {@link Wrapper#wrapToList(CharSequence)} for that item.
+ */
+public final class WrappedBatch {
+
+    private char[] chars;
+    private int length;
+
+    // lineEnds[k] is the offset in chars after line k, line k starts at
+    // lineEnds[k - 1] (or 0)
+    private int[] lineEnds = new int[16];
+    private int lines;
+
+    // itemLines[i] is the index of the first line of item i, itemLines[size] is
+    // the number of lines
+    private int[] itemLines = new int[16];
+    private int size;
+
+    // true if chars have been written since the last line end
+    private boolean building;
+
+    private final LineConsumer consumer = new LineConsumer() {
+
+        @Override
+        public void write(char[] c, int offset, int n) {
+            ensureCapacity(n);
+            System.arraycopy(c, offset, chars, length, n);
+            length += n;
+            building = true;
+        }
+
+        @Override
+        public void write(String s) {
+            int n = s.length();
+            ensureCapacity(n);
+            s.getChars(0, n, chars, length);
+            length += n;
+            building = true;
+        }
+
+        @Override
+        public void writeNewLine() {
+            addLine();
+        }
+    };
+
+    WrappedBatch(int initialCapacity) {
+        this.chars = new char[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * Returns the number of items.
+     *
+     * @return number of items
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of wrapped lines of the item.
+     *
+     * @param item item index
+     * @return number of lines
+     */
+    public int lineCount(int item) {
+        checkItem(item);
+        return itemLines[item + 1] - itemLines[item];
+    }
+
+    /**
+     * Returns a wrapped line of the item.
+     *
+     * @param item item index
+     * @param line line index within the item
+     * @return the line
+     */
+    public String line(int item, int line) {
+        int k = lineIndex(item, line);
+        int start = k == 0 ? 0 : lineEnds[k - 1];
+        return new String(chars, start, lineEnds[k] - start);
+    }
+
+    /**
+     * Returns the wrapped lines of the item.
+     *
+     * @param item item index
+     * @return wrapped lines
+     */
+    public List<String> lines(int item) {
+        int n = lineCount(item);
+        List<String> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            list.add(line(item, i));
+        }
+        return list;
+    }
+
+    LineConsumer consumer() {
+        return consumer;
+    }
+
+    void endItem() {
+        if (building) {
+            addLine();
+        }
+        if (size + 1 == itemLines.length) {
+            itemLines = Arrays.copyOf(itemLines, itemLines.length * 2);
+        }
+        size++;
+        itemLines[size] = lines;
+    }
+
+    private int lineIndex(int item, int line) {
+        int n = lineCount(item);
+        if (line < 0 || line >= n) {
+            throw new IndexOutOfBoundsException("line " + line + ", lines " + n);
+        }
+        return itemLines[item] + line;
+    }
+
+    private void checkItem(int item) {
+        if (item < 0 || item >= size) {
+            throw new IndexOutOfBoundsException("item " + item + ", size " + size);
+        }
+    }
+
+    private void addLine() {
+        if (lines == lineEnds.length) {
+            lineEnds = Arrays.copyOf(lineEnds, lines * 2);
+        }
+        lineEnds[lines++] = length;
+        building = false;
+    }
+
+    private void ensureCapacity(int n) {
+        if (length + n > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + n));
+        }
+    }
+}
@@ -0,0 +1,1058 @@
+package org.davidmoten.text.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.github.davidmoten.guavamini.Preconditions;
+import com.github.davidmoten.guavamini.annotations.VisibleForTesting;
+
+/**
+ * An immutable, thread-safe word wrapping configuration. Obtain an instance
+ * via {@link WordWrap#configure()} and reuse it for any number of inputs
+ * (concurrently if desired). Unlike {@link WordWrap.Builder} a {@code Wrapper}
+ * is not bound to a source so the per-call cost is only the wrapping itself.
+ */
+public final class Wrapper {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private static final int PARALLEL_CHUNK_SIZE = 1 << 16;
+
+    // bytes of input mapped at a time, keeps address space use modest for huge files
+    private static final long MAP_SIZE = 1L << 26;
+
+    private static final int FILE_BUFFER_SIZE = 1 << 16;
+
+    private static final int MIN_BYTE_BUFFER_SIZE = 16;
+
+    private final double maxWidth;
+    private final Function<? super CharSequence, ? extends Number> stringWidth;
+    private final WidthFunction widthFunction;
+    private final WidthCache widthCache;
+    private final CharWidthModel charWidthModel;
+    private final CharClasses charClasses;
+    private final String newLine;
+    // some writers (OutputStreamWriter for example) copy a String to a new array on
+    // every write so the new line is written from an array
+    private final char[] newLineChars;
+    private final boolean insertHyphens;
+    private final boolean breakWords;
+    private final boolean optimalFit;
+    private final boolean monotoneWidth;
+    private final int maxBufferChars;
+    private final boolean failOnBufferFull;
+    private final WrapListener listener;
+
+    private Wrapper(Builder b) {
+        this.maxWidth = b.maxWidth.doubleValue();
+        this.stringWidth = b.stringWidth;
+        this.widthFunction = b.widthFunction;
+        // only optimal fit measures words on their own, a width model is
+        // already constant time per char so is never cached
+        this.widthCache = b.widthCacheSize > 0 && b.optimalFit && b.charWidthModel == null
+                ? new WidthCache(b.widthCacheSize)
+                : null;
+        this.charWidthModel = b.charWidthModel;
+        this.charClasses = b.extraWordChars == WordWrap.SPECIAL_WORD_CHARS_SET_DEFAULT
+                ? CharClasses.DEFAULT
+                : CharClasses.of(b.extraWordChars);
+        this.newLine = b.newLine;
+        this.newLineChars = b.newLine.toCharArray();
+        this.insertHyphens = b.insertHyphens;
+        this.breakWords = b.breakWords;
+        this.optimalFit = b.optimalFit;
+        this.monotoneWidth = b.monotoneWidth;
+        this.maxBufferChars = b.maxBufferChars;
+        this.failOnBufferFull = b.failOnBufferFull;
+        this.listener = b.listener;
+    }
+
+    /**
+     * Returns the width cache of this wrapper, for its hit and miss counts.
+     *
+     * @return the width cache or empty if not configured with
+     *         {@link Builder#cacheWidths(int)} and {@link Builder#optimalFit(boolean)}
+     */
+    public Optional<WidthCache> widthCache() {
+        return Optional.ofNullable(widthCache);
+    }
+
+    /**
+     * Wraps the given text and returns the result as a String.
+     *
+     * @param text text to be wrapped
+     * @return wrapped text
+     */
+    public String wrap(CharSequence text) {
+        return wrap(text, 0, text.length());
+    }
+
+    /**
+     * Wraps the given text and writes the output to the given {@link LineConsumer}.
+     * The text is scanned directly (no {@link Reader} is involved).
+     *
+     * @param text text to be wrapped
+     * @param out  receives the wrapped lines
+     */
+    public void wrap(CharSequence text, LineConsumer out) {
+        try {
+            createEngine(out).wrap(text);
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    /**
+     * Wraps {@code chars[offset..offset + length)} and writes the output to the
+     * given {@link LineConsumer}. The array is scanned directly and is not
+     * modified.
+     *
+     * @param chars  text to be wrapped
+     * @param offset index of the first char to be wrapped
+     * @param length number of chars to be wrapped
+     * @param out    receives the wrapped lines
+     */
+    public void wrap(char[] chars, int offset, int length, LineConsumer out) {
+        Preconditions.checkArgument(offset >= 0 && length >= 0 && offset + length <= chars.length,
+                "range out of bounds");
+        try {
+            WrapEngine engine = createEngine(out);
+            engine.accept(chars, offset, length);
+            engine.finish();
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    /**
+     * Wraps the given text and writes the output to {@code out}. {@code out} is
+     * not closed by this method.
+     *
+     * @param text text to be wrapped
+     * @param out  output for wrapped text
+     */
+    public void wrap(CharSequence text, Writer out) {
+        wrap(text, writerConsumer(out));
+    }
+
+    /**
+     * Wraps the text read from {@code in} and writes the output to {@code out}.
+     * Neither {@code in} nor {@code out} is closed by this method.
+     *
+     * @param in  source to be wrapped
+     * @param out output for wrapped text
+     */
+    public void wrap(Reader in, Writer out) {
+        wrap(in, writerConsumer(out));
+    }
+
+    /**
+     * Wraps the text read from {@code in} and writes the output to the given
+     * {@link LineConsumer}. {@code in} is not closed by this method.
+     *
+     * @param in  source to be wrapped
+     * @param out receives the wrapped lines
+     */
+    public void wrap(Reader in, LineConsumer out) {
+        try {
+            createEngine(out).wrap(in, READ_BUFFER_SIZE);
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns a new session that wraps text pushed to it in pieces and writes
+     * each line to {@code out} as soon as it is decided.
+     *
+     * @param out receives the wrapped lines
+     * @return a new session
+     */
+    public WrapSession session(LineConsumer out) {
+        return new WrapSession(createEngine(out));
+    }
+
+    /**
+     * Wraps the UTF-8 encoded text {@code bytes[offset..offset + length)} and
+     * writes the wrapped text as UTF-8 to {@code out} without decoding to a char
+     * buffer or re-encoding: the bytes are decoded one character at a time to
+     * make wrapping decisions and the output is copied from the input byte
+     * ranges of the wrapped lines. For well-formed input the output is the same
+     * as {@link #wrap(CharSequence)} of the decoded text encoded as UTF-8. Each
+     * byte of a malformed sequence is treated as U+FFFD. {@code out} is not
+     * flushed or closed by this method.
+     *
+     * @param bytes  UTF-8 text to be wrapped
+     * @param offset index of the first byte to be wrapped
+     * @param length number of bytes to be wrapped
+     * @param out    receives the wrapped text encoded as UTF-8
+     */
+    public void wrapUtf8(byte[] bytes, int offset, int length, OutputStream out) {
+        Preconditions.checkArgument(offset >= 0 && length >= 0 && offset + length <= bytes.length,
+                "range out of bounds");
+        try {
+            WrapEngine engine = createEngine(new Utf8SpanWriter(bytes, offset, offset + length,
+                    out, newLine, READ_BUFFER_SIZE));
+            engine.acceptUtf8(bytes, offset, length);
+            engine.finish();
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    /**
+     * Wraps the UTF-8 encoded text remaining in {@code in} and writes the
+     * wrapped text as UTF-8 to {@code out}. The position of {@code in} is moved
+     * to its limit. A buffer without an accessible array (a direct buffer for
+     * instance) is copied to an array first.
+     *
+     * @param in  UTF-8 text to be wrapped
+     * @param out receives the wrapped text encoded as UTF-8
+     * @see #wrapUtf8(byte[], int, int, OutputStream)
+     */
+    public void wrapUtf8(ByteBuffer in, OutputStream out) {
+        int length = in.remaining();
+        if (in.hasArray()) {
+            wrapUtf8(in.array(), in.arrayOffset() + in.position(), length, out);
+            // cast so that the Java 8 Buffer.position(int) signature is linked
+            ((Buffer) in).position(in.limit());
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            wrapUtf8(bytes, 0, length, out);
+        }
+    }
+
+    /**
+     * Wraps the UTF-8 encoded text remaining in {@code in} and puts the wrapped
+     * text as UTF-8 into {@code out}.
+     *
+     * @param in  UTF-8 text to be wrapped
+     * @param out receives the wrapped text encoded as UTF-8
+     * @throws java.nio.BufferOverflowException if {@code out} does not have
+     *                                          enough space
+     * @see #wrapUtf8(byte[], int, int, OutputStream)
+     */
+    public void wrapUtf8(ByteBuffer in, ByteBuffer out) {
+        wrapUtf8(in, new OutputStream() {
+
+            @Override
+            public void write(int b) {
+                out.put((byte) b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                out.put(b, off, len);
+            }
+        });
+    }
+
+    /**
+     * Wraps the file {@code in} and writes the output to the file {@code out}
+     * (created or truncated) using the given encoding for both. The input is
+     * memory-mapped and decoded in large blocks and the output is encoded and
+     * written to a {@link FileChannel} in large blocks so there are far fewer
+     * copies and system calls than with a {@link Reader} and {@link Writer}.
+     * Malformed input and unmappable output are replaced with the charset's
+     * replacement (as {@link java.io.InputStreamReader} and
+     * {@link java.io.OutputStreamWriter} do).
+     *
+     * @param in      file to be wrapped
+     * @param out     file to receive the wrapped text
+     * @param charset encoding of {@code in} and {@code out}
+     */
+    public void wrapFile(Path in, Path out, Charset charset) {
+        wrapFile(in, out, charset, MAP_SIZE, FILE_BUFFER_SIZE);
+    }
+
+    @VisibleForTesting
+    void wrapFile(Path in, Path out, Charset charset, long mapSize, int bufferSize) {
+        try (FileChannel input = FileChannel.open(in, StandardOpenOption.READ);
+                FileChannel output = FileChannel.open(out, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ChannelLineConsumer consumer = new ChannelLineConsumer(output, charset, newLine,
+                    bufferSize);
+            WrapEngine engine = createEngine(consumer);
+            CharsetDecoder decoder = charset.newDecoder() //
+                    .onMalformedInput(CodingErrorAction.REPLACE) //
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            // mapped bytes are copied in blocks to a heap buffer because the jdk
+            // decoders are much faster array to array than from a direct buffer.
+            // The minimum size leaves room for a partial char plus more bytes.
+            ByteBuffer bytes = ByteBuffer.allocate(Math.max(bufferSize, MIN_BYTE_BUFFER_SIZE));
+            CharBuffer chars = CharBuffer.allocate(bufferSize);
+            long size = input.size();
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(mapSize, size - position);
+                MappedByteBuffer mapped = input.map(MapMode.READ_ONLY, position, length);
+                position += length;
+                while (mapped.hasRemaining()) {
+                    int n = Math.min(bytes.remaining(), mapped.remaining());
+                    mapped.get(bytes.array(), bytes.arrayOffset() + bytes.position(), n);
+                    ((Buffer) bytes).position(bytes.position() + n);
+                    ((Buffer) bytes).flip();
+                    decode(decoder, bytes, chars, engine, false);
+                    // keeps the start of a char split across blocks or windows
+                    bytes.compact();
+                }
+            }
+            ((Buffer) bytes).flip();
+            decode(decoder, bytes, chars, engine, true);
+            while (decoder.flush(chars).isOverflow()) {
+                accept(chars, engine);
+            }
+            accept(chars, engine);
+            engine.finish();
+            consumer.flush();
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    private static void decode(CharsetDecoder decoder, ByteBuffer bytes, CharBuffer chars,
+            WrapEngine engine, boolean endOfInput) throws IOException {
+        while (true) {
+            CoderResult r = decoder.decode(bytes, chars, endOfInput);
+            if (r.isOverflow()) {
+                accept(chars, engine);
+            } else if (r.isUnderflow()) {
+                break;
+            } else {
+                r.throwException();
+            }
+        }
+        accept(chars, engine);
+    }
+
+    private static void accept(CharBuffer chars, WrapEngine engine) throws IOException {
+        engine.accept(chars.array(), chars.arrayOffset(), chars.position());
+        // cast so that the Java 8 Buffer.clear() signature is linked
+        ((Buffer) chars).clear();
+    }
+
+    private LineConsumer writerConsumer(Writer out) {
+        return new LineConsumer() {
+
+            @Override
+            public void write(String s) throws IOException {
+                out.write(s);
+            }
+
+            @Override
+            public void write(char[] chars, int start, int length) throws IOException {
+                out.write(chars, start, length);
+            }
+
+            @Override
+            public void writeNewLine() throws IOException {
+                out.write(newLineChars, 0, newLineChars.length);
+            }
+
+        };
+    }
+
+    /**
+     * Wraps the given text using the common {@link ForkJoinPool} and returns the
+     * result. The output is identical to {@link #wrap(CharSequence)}.
+     *
+     * @param text text to be wrapped, must not be modified during the call
+     * @return wrapped text
+     * @see #wrapParallel(CharSequence, Writer, Executor)
+     */
+    public String wrapParallel(CharSequence text) {
+        StringWriter out = new StringWriter(text.length() + text.length() / 8);
+        wrapParallel(text, out, ForkJoinPool.commonPool());
+        return out.toString();
+    }
+
+    /**
+     * Wraps the given text in parallel and writes the output to {@code out}. The
+     * wrapping state is reset at every new line character so the text is split
+     * into chunks that end just after a new line, the chunks are wrapped
+     * concurrently on {@code executor} and the results are written to
+     * {@code out} in order. The output is identical to
+     * {@link #wrap(CharSequence, Writer)}. Only a bounded number of chunks are in
+     * flight at any time. {@code out} is not closed by this method.
+     *
+     * @param text     text to be wrapped, must not be modified during the call
+     * @param out      output for wrapped text
+     * @param executor runs the wrapping of chunks
+     */
+    public void wrapParallel(CharSequence text, Writer out, Executor executor) {
+        wrapParallel(text, out, executor, PARALLEL_CHUNK_SIZE,
+                Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    @VisibleForTesting
+    void wrapParallel(CharSequence text, Writer out, Executor executor, int chunkSize,
+            int maxInFlight) {
+        Deque<CompletableFuture<String>> inFlight = new ArrayDeque<>();
+        int n = text.length();
+        int start = 0;
+        try {
+            while (start < n) {
+                int end = Math.min(n, start + chunkSize);
+                while (end < n && text.charAt(end - 1) != '\n') {
+                    end++;
+                }
+                int chunkStart = start;
+                int chunkEnd = end;
+                inFlight.add(CompletableFuture.supplyAsync(() -> wrap(text, chunkStart, chunkEnd),
+                        executor));
+                if (inFlight.size() >= maxInFlight) {
+                    out.write(join(inFlight.poll()));
+                }
+                start = end;
+            }
+            while (!inFlight.isEmpty()) {
+                out.write(join(inFlight.poll()));
+            }
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        } finally {
+            for (CompletableFuture<String> f : inFlight) {
+                f.cancel(false);
+            }
+        }
+    }
+
+    private String wrap(CharSequence text, int start, int end) {
+        StringBuilder b = new StringBuilder(end - start + (end - start) / 8);
+        WrapEngine engine = createEngine(new LineConsumer() {
+
+            @Override
+            public void write(char[] chars, int offset, int length) {
+                b.append(chars, offset, length);
+            }
+
+            @Override
+            public void write(String s) {
+                b.append(s);
+            }
+
+            @Override
+            public void writeNewLine() {
+                b.append(newLine);
+            }
+        });
+        try {
+            engine.accept(text, start, end);
+            engine.finish();
+        } catch (IOException e) {
+            // not expected as no I/O is performed
+            throw new IORuntimeException(e);
+        }
+        return b.toString();
+    }
+
+    private static String join(CompletableFuture<String> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Wraps the given text and returns the line boundaries as offsets into
+     * {@code text} instead of copying the wrapped lines. Useful when the caller
+     * already holds the text and only needs to know where to break it.
+     *
+     * @param text text to be wrapped
+     * @return offsets of the wrapped lines in {@code text}
+     */
+    public LineBreaks breaks(CharSequence text) {
+        return breaks(text, new LineBreaks());
+    }
+
+    /**
+     * Wraps the given text and records the line boundaries as offsets into
+     * {@code text} in {@code breaks} (which is cleared first). Reusing a
+     * {@link LineBreaks} instance avoids allocation once its arrays are large
+     * enough.
+     *
+     * @param text   text to be wrapped
+     * @param breaks receives the offsets of the wrapped lines
+     * @return {@code breaks}
+     */
+    public LineBreaks breaks(CharSequence text, LineBreaks breaks) {
+        breaks.clear();
+        try {
+            createEngine(breaks).wrap(text);
+        } catch (IOException e) {
+            // not expected as no I/O is performed
+            throw new IORuntimeException(e);
+        }
+        return breaks;
+    }
+
+    /**
+     * Wraps {@code chars[offset..offset + length)} and records the line
+     * boundaries in {@code breaks} (which is cleared first) as indexes into
+     * {@code chars}.
+     *
+     * @param chars  text to be wrapped
+     * @param offset index of the first char to be wrapped
+     * @param length number of chars to be wrapped
+     * @param breaks receives the indexes of the wrapped lines
+     * @return {@code breaks}
+     */
+    public LineBreaks breaks(char[] chars, int offset, int length, LineBreaks breaks) {
+        Preconditions.checkArgument(offset >= 0 && length >= 0 && offset + length <= chars.length,
+                "range out of bounds");
+        breaks.clear();
+        try {
+            WrapEngine engine = createEngine(breaks);
+            engine.position(offset);
+            engine.accept(chars, offset, length);
+            engine.finish();
+        } catch (IOException e) {
+            // not expected as no I/O is performed
+            throw new IORuntimeException(e);
+        }
+        return breaks;
+    }
+
+    private WrapEngine createEngine(LineConsumer out) {
+        return new WrapEngine(out, null, maxWidth, stringWidth, widthFunction, widthCache,
+                charWidthModel, charClasses, insertHyphens, breakWords, optimalFit,
+                monotoneWidth, maxBufferChars, failOnBufferFull, listener);
+    }
+
+    private WrapEngine createEngine(LineBreaks breaks) {
+        return createEngine(breaks.recorder());
+    }
+
+    private WrapEngine createEngine(SpanConsumer spans) {
+        return new WrapEngine(null, spans, maxWidth, stringWidth, widthFunction, widthCache,
+                charWidthModel, charClasses, insertHyphens, breakWords, optimalFit,
+                monotoneWidth, maxBufferChars, failOnBufferFull, listener);
+    }
+
+    /**
+     * Wraps the given text and returns the wrapped lines.
+     *
+     * @param text text to be wrapped
+     * @return wrapped lines
+     */
+    public List<String> wrapToList(CharSequence text) {
+        ListLineConsumer lines = new ListLineConsumer();
+        wrap(text, lines);
+        return lines.lines();
+    }
+
+    /**
+     * Wraps the text read from {@code in} and returns the wrapped lines.
+     * {@code in} is not closed by this method.
+     *
+     * @param in source to be wrapped
+     * @return wrapped lines
+     */
+    public List<String> wrapToList(Reader in) {
+        ListLineConsumer lines = new ListLineConsumer();
+        wrap(in, lines);
+        return lines.lines();
+    }
+
+    /**
+     * Returns the wrapped lines of {@code text} as a lazily evaluated stream.
+     * The text is only wrapped as far as needed to produce each line so taking
+     * the first few lines of a large text is cheap.
+     *
+     * @param text text to be wrapped
+     * @return wrapped lines, the same as {@link #wrapToList(CharSequence)}
+     */
+    public Stream<String> lines(CharSequence text) {
+        return stream(LineIterator.of(text, this::createEngine));
+    }
+
+    /**
+     * Returns the wrapped lines of the text read from {@code in} as a lazily
+     * evaluated stream. {@code in} is read in chunks only as far as needed to
+     * produce each line so memory use is bounded by the longest line (not the
+     * input) and a short-circuiting stream operation stops reading early.
+     * {@code in} is not closed by this method or by closing the stream.
+     *
+     * @param in source to be wrapped
+     * @return wrapped lines, the same as {@link #wrapToList(Reader)}
+     */
+    public Stream<String> lines(Reader in) {
+        return stream(LineIterator.of(in, READ_BUFFER_SIZE, this::createEngine));
+    }
+
+    private static Stream<String> stream(Iterator<String> it) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Wraps every text in {@code texts} and returns the wrapped lines of all of
+     * them in one compact {@link WrappedBatch}. One set of wrapping buffers is
+     * reused for all items so wrapping many short texts is much cheaper than
+     * calling {@link #wrapToList(CharSequence)} for each.
+     *
+     * @param texts texts to be wrapped
+     * @return wrapped lines of each text in iteration order
+     */
+    public WrappedBatch wrapAll(Iterable<? extends CharSequence> texts) {
+        WrappedBatch batch = new WrappedBatch(estimateLength(texts));
+        WrapEngine engine = createEngine(batch.consumer());
+        try {
+            for (CharSequence text : texts) {
+                engine.reset(batch.consumer());
+                engine.wrap(text);
+                batch.endItem();
+            }
+        } catch (IOException e) {
+            // not expected as no I/O is performed
+            throw new IORuntimeException(e);
+        }
+        return batch;
+    }
+
+    private static int estimateLength(Iterable<? extends CharSequence> texts) {
+        if (texts instanceof Collection) {
+            // sizing the batch up front avoids copying as it grows, wrapped text is
+            // usually no longer than the input (new lines are not stored)
+            long n = 0;
+            for (CharSequence text : texts) {
+                n += text.length();
+            }
+            return (int) Math.min(n, Integer.MAX_VALUE - 8);
+        } else {
+            return 256;
+        }
+    }
+
+    /**
+     * Wraps every text in {@code texts} and writes the wrapped lines of the
+     * {@code i}th text to {@code consumers.apply(i)}. One set of wrapping
+     * buffers is reused for all items.
+     *
+     * @param texts     texts to be wrapped
+     * @param consumers returns the consumer of the wrapped lines of the text
+     *                  with the given index
+     */
+    public void wrapAll(Iterable<? extends CharSequence> texts,
+            IntFunction<? extends LineConsumer> consumers) {
+        WrapEngine engine = null;
+        int i = 0;
+        try {
+            for (CharSequence text : texts) {
+                LineConsumer out = consumers.apply(i);
+                if (engine == null) {
+                    engine = createEngine(out);
+                } else {
+                    engine.reset(out);
+                }
+                engine.wrap(text);
+                i++;
+            }
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    private static final class ListLineConsumer implements LineConsumer {
+
+        private final List<String> lines = new ArrayList<>();
+        private final StringBuilder b = new StringBuilder();
+        private boolean building;
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            building = true;
+            b.append(chars, offset, length);
+        }
+
+        @Override
+        public void writeNewLine() {
+            lines.add(b.toString());
+            b.setLength(0);
+            building = false;
+        }
+
+        List<String> lines() {
+            if (building) {
+                lines.add(b.toString());
+            }
+            return lines;
+        }
+    }
+
+    /**
+     * Provides method chaining for specifying the parameters of a {@link Wrapper}.
+     * A builder is not thread-safe but the {@link Wrapper} it builds is.
+     */
+    public static final class Builder {
+
+        private Number maxWidth = 80;
+        private Function<? super CharSequence, ? extends Number> stringWidth;
+        private WidthFunction widthFunction = WidthFunction.CHAR_COUNT;
+        private CharWidthModel charWidthModel;
+        private int widthCacheSize;
+        private Set<Character> extraWordChars = WordWrap.SPECIAL_WORD_CHARS_SET_DEFAULT;
+        private String newLine = "\n";
+        private boolean insertHyphens = true;
+        private boolean breakWords = true;
+        private boolean optimalFit;
+        private boolean monotoneWidth;
+        private int maxBufferChars = Integer.MAX_VALUE;
+        private boolean failOnBufferFull;
+        private WrapListener listener;
+
+        Builder() {
+        }
+
+        /**
+         * Sets the maximum width of a line using the {@code stringWidth} function. Word
+         * wrapping/splitting will be attempted for lines with greater than
+         * {@code maxWidth}. If not set the default is 80.
+         *
+         * @param maxWidth maximum width of a line using the {@code stringWidth}
+         *                 function.
+         * @return this
+         * @throws IllegalArgumentException if {@code maxWidth} is less than or equal to
+         *                                  zero
+         */
+        public Builder maxWidth(Number maxWidth) {
+            Preconditions.checkArgument(maxWidth.doubleValue() > 0);
+            this.maxWidth = maxWidth;
+            return this;
+        }
+
+        /**
+         * Sets the string width function used to determine if a line is at maximum
+         * width (and therefore needing wrapping or splitting). If not set the string
+         * width function is the number of characters. The function must be safe for
+         * concurrent use if the built {@link Wrapper} is shared between threads.
+         * Replaces any {@link WidthFunction} or {@link CharWidthModel} previously
+         * set.
+         *
+         * @param stringWidth function that returns the width of a sequence of
+         *                    characters
+         * @return this
+         */
+        public Builder stringWidth(Function<? super CharSequence, ? extends Number> stringWidth) {
+            this.stringWidth = stringWidth;
+            this.widthFunction = null;
+            this.charWidthModel = null;
+            return this;
+        }
+
+        /**
+         * Sets the width function used to determine if a line is at maximum width.
+         * Unlike {@link #stringWidth(Function)} the function is called directly on
+         * the engine's buffer and returns a primitive so nothing is allocated per
+         * call. Replaces any {@code stringWidth} function or {@link CharWidthModel}
+         * previously set.
+         *
+         * @param widthFunction function that returns the width of a range of
+         *                      characters
+         * @return this
+         */
+        public Builder widthFunction(WidthFunction widthFunction) {
+            this.widthFunction = widthFunction;
+            this.stringWidth = null;
+            this.charWidthModel = null;
+            return this;
+        }
+
+        /**
+         * Sets an additive width model to be used instead of a string width
+         * function. The engine keeps running sums of character widths so each width
+         * check is constant time rather than proportional to the line length.
+         * Replaces any {@code stringWidth} or {@link WidthFunction} previously set.
+         *
+         * @param charWidthModel per character widths and kerning
+         * @return this
+         */
+        public Builder charWidthModel(CharWidthModel charWidthModel) {
+            this.charWidthModel = charWidthModel;
+            this.stringWidth = null;
+            this.widthFunction = null;
+            return this;
+        }
+
+        /**
+         * Caches up to {@code maxEntries} word and separator widths for
+         * {@link #optimalFit(boolean)} wrapping, which measures every word of a
+         * paragraph on its own, so an expensive {@code stringWidth} or
+         * {@link WidthFunction} is called once per distinct word rather than once
+         * per occurrence. Entries are keyed on the characters of the word. The
+         * cache belongs to the built {@link Wrapper}, lasts across wraps, is safe
+         * for concurrent use and its hit and miss counts are available from
+         * {@link Wrapper#widthCache()}. Has no effect on greedy wrapping (the
+         * default), whose measurements are of line prefixes that seldom repeat,
+         * or when a {@link CharWidthModel} is used. Zero (the default) means no
+         * cache.
+         *
+         * @param maxEntries maximum number of cached widths
+         * @return this
+         * @throws IllegalArgumentException if {@code maxEntries} is negative
+         */
+        public Builder cacheWidths(int maxEntries) {
+            Preconditions.checkArgument(maxEntries >= 0, "maxEntries cannot be negative");
+            this.widthCacheSize = maxEntries;
+            return this;
+        }
+
+        /**
+         * Sets the newLine string to be used. If not set the default is '\n' (line feed
+         * character).
+         *
+         * @param newLine string to be output on for a new line delimiter
+         * @return this
+         */
+        public Builder newLine(String newLine) {
+            this.newLine = newLine;
+            return this;
+        }
+
+        /**
+         * Sets all extra word characters (characters that will be treated like normal
+         * alphabetic characters for defining word boundaries).
+         *
+         * @param extraWordChars extra word characters (in addtion to alphabetic
+         *                       characters)
+         * @return this
+         */
+        public Builder extraWordChars(Set<Character> extraWordChars) {
+            this.extraWordChars = extraWordChars;
+            return this;
+        }
+
+        /**
+         * Sets all extra word characters (characters that will be treated like normal
+         * alphabetic characters for defining word boundaries).
+         *
+         * @param extraWordChars extra word characters (in addtion to alphabetic
+         *                       characters)
+         * @return this
+         */
+        public Builder extraWordChars(String extraWordChars) {
+            return extraWordChars(WordWrap.toSet(extraWordChars));
+        }
+
+        /**
+         * Adds more word characters (characters that will be treated like normal
+         * alphabetic characters for defining word boundaries).
+         *
+         * @param includeWordChars more word characters
+         * @return this
+         */
+        public Builder includeExtraWordChars(String includeWordChars) {
+            prepareExtraWordCharsForMutation();
+            this.extraWordChars.addAll(WordWrap.toSet(includeWordChars));
+            return this;
+        }
+
+        /**
+         * Adds extra word characters to be excluded. Alphabetic characters are always
+         * word characters and thus will be ignored here.
+         *
+         * @param excludeWordChars extra word characters to be excluded
+         * @return this
+         */
+        public Builder excludeExtraWordChars(String excludeWordChars) {
+            prepareExtraWordCharsForMutation();
+            this.extraWordChars.removeAll(WordWrap.toSet(excludeWordChars));
+            return this;
+        }
+
+        /**
+         * If we want to mutate the default extraWordChars set then we replace it with a mutable
+         * set just for use by this builder. This is done lazily as a perf enhancement
+         * (reduces allocations if a lot of calls to wrap are being made).
+         */
+        private void prepareExtraWordCharsForMutation() {
+            if (this.extraWordChars == WordWrap.SPECIAL_WORD_CHARS_SET_DEFAULT) {
+                this.extraWordChars = new HashSet<>(WordWrap.SPECIAL_WORD_CHARS_SET_DEFAULT);
+            }
+        }
+
+        /**
+         * Sets if to break words using a hyphen character. If set to false then no
+         * breaking character will be used.
+         *
+         * @param insertHyphens whether to break hyphens
+         * @return this
+         */
+        public Builder insertHyphens(boolean insertHyphens) {
+            this.insertHyphens = insertHyphens;
+            return this;
+        }
+
+        /**
+         * If a word is longer than {@code maxWidth} and {@code breakWords} is true then
+         * such a word will be broken across two or more lines (with or without a hyphen
+         * according to {@link Builder#insertHyphens(boolean)}).
+         *
+         * @param breakWords if true then break words across lines
+         * @return this
+         */
+        public Builder breakWords(boolean breakWords) {
+            this.breakWords = breakWords;
+            return this;
+        }
+
+        /**
+         * If true then each paragraph (text up to a line feed) is wrapped to
+         * minimize raggedness (the sum of the squared space left at the end of
+         * every line but the last) rather than greedily filling each line. Suits
+         * typeset output where uneven right edges are noticeable. Words are split
+         * at whitespace and the width of a line is taken to be the sum of the
+         * widths of its words and the whitespace between them. A word too wide
+         * for a line is given a line of its own (broken into pieces first if
+         * {@link #breakWords(boolean)} is true). A paragraph is held in memory
+         * until its line feed. If not set the default is false (greedy).
+         *
+         * @param optimalFit if true then minimize raggedness
+         * @return this
+         */
+        public Builder optimalFit(boolean optimalFit) {
+            this.optimalFit = optimalFit;
+            return this;
+        }
+
+        /**
+         * Declares that the width of a string is never less than the width of
+         * any of its prefixes, which is true of practically all font
+         * measurements. When set and a word too long for a line is broken, the
+         * rest of the word is measured at a few checkpoints and the break found
+         * by searching (about log n width calls per line rather than one per
+         * char), which matters when measuring is costly and tokens are long
+         * (urls, hashes, base64). The output is the same as without this
+         * setting as long as widths are monotone. Has no effect with a
+         * {@link CharWidthModel} (already constant time per char), when words
+         * are not broken or with {@link #optimalFit(boolean)}, which measures
+         * the pieces of a broken word one char at a time. If not set the
+         * default is false.
+         *
+         * @param monotoneWidth if true then widths are assumed monotone
+         * @return this
+         */
+        public Builder monotoneWidth(boolean monotoneWidth) {
+            this.monotoneWidth = monotoneWidth;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of chars held while wrapping so that memory use
+         * does not depend on the input (hostile input with no line feeds and no
+         * break opportunities for example). The buffer holds the part of the
+         * current line not yet written and the word or run of whitespace being
+         * read (the current paragraph with {@link #optimalFit(boolean)}). When it
+         * reaches the limit:
+         * 
+         * <ul>
+         * <li>if words are not broken and the buffer is a single word that starts
+         * a line and is already wider than the line, the word is written as it
+         * arrives and the output is unchanged</li>
+         * <li>otherwise the buffered text up to its last whitespace is written as
+         * a line of its own (a forced line break, for optimal fit the paragraph is
+         * ended there) and the output can differ from the output without a
+         * limit</li>
+         * </ul>
+         * 
+         * or if {@link #failOnBufferFull(boolean)} is set a
+         * {@link BufferFullException} is thrown. So output only differs when a
+         * line and the word following it, whitespace included, do not fit in the
+         * buffer. Set the limit well above the number of chars in two full lines
+         * (more for long runs of whitespace or indentation); a limit below the
+         * number of chars in a line splits ordinary words. If not set there is no
+         * limit.
+         * Independently of this setting a buffer that grew unusually large is
+         * released at the next line feed so a long lived {@link WrapSession} or
+         * batch does not hold on to it.
+         *
+         * @param maxBufferChars maximum number of chars buffered (a surrogate
+         *                       pair may take it one over)
+         * @return this
+         * @throws IllegalArgumentException if {@code maxBufferChars} is not
+         *                                  positive
+         */
+        public Builder maxBufferChars(int maxBufferChars) {
+            Preconditions.checkArgument(maxBufferChars > 0, "maxBufferChars must be positive");
+            this.maxBufferChars = maxBufferChars;
+            return this;
+        }
+
+        /**
+         * If true then a {@link BufferFullException} is thrown when the limit set
+         * by {@link #maxBufferChars(int)} is reached rather than forcing output.
+         * If not set the default is false.
+         *
+         * @param failOnBufferFull if true then fail rather than force output
+         * @return this
+         */
+        public Builder failOnBufferFull(boolean failOnBufferFull) {
+            this.failOnBufferFull = failOnBufferFull;
+            return this;
+        }
+
+        /**
+         * Sets a listener to receive the {@link WrapStats} (chars processed, lines
+         * written, words broken, hyphens inserted, width function calls and time)
+         * of every wrap. If not set (the default) nothing is counted or timed.
+         *
+         * @param listener receives the stats of each wrap, may be null
+         * @return this
+         */
+        public Builder listener(WrapListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Returns an immutable {@link Wrapper} with the current settings of this
+         * builder. Later changes to this builder do not affect the returned
+         * {@code Wrapper}.
+         *
+         * @return immutable wrapper
+         */
+        public Wrapper build() {
+            return new Wrapper(this);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package org.davidmoten.text.utils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Flow.Processor} that wraps a stream of text chunks into a stream of
+ * wrapped lines. One chunk at a time is requested from upstream and only when
+ * downstream has outstanding demand and every line produced so far has been
+ * emitted, so memory is bounded by one chunk plus the lines it completes no
+ * matter how long the text is. Lines are the same as
+ * {@link Wrapper#wrapToList(CharSequence)} of the concatenated chunks.
+ *
+ * <p>
+ * Supports a single downstream subscriber. Available when running on Java 9
+ * or later (this class is in the multi-release part of the jar).
+ */
+public final class WrapProcessor implements Flow.Processor<CharSequence, String> {
+
+    private final WrapSession session;
+
+    // lines produced by the session but not yet emitted, only accessed in drain
+    private final Deque<String> lines = new ArrayDeque<>();
+    private final StringBuilder line = new StringBuilder();
+    private boolean building;
+
+    // at most one chunk is outstanding
+    private final Queue<CharSequence> chunks = new ConcurrentLinkedQueue<>();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super String> downstream;
+    private volatile boolean subscribed;
+    private volatile boolean upstreamDone;
+    private volatile Throwable error;
+    private volatile boolean cancelled;
+
+    // only accessed in drain
+    private boolean upstreamRequested;
+    private boolean finished;
+    private boolean terminated;
+
+    /**
+     * Constructor.
+     *
+     * @param wrapper wrapping configuration
+     */
+    public WrapProcessor(Wrapper wrapper) {
+        this.session = wrapper.session(new LineConsumer() {
+
+            @Override
+            public void write(char[] chars, int offset, int length) {
+                line.append(chars, offset, length);
+                building = true;
+            }
+
+            @Override
+            public void writeNewLine() {
+                lines.add(line.toString());
+                line.setLength(0);
+                building = false;
+            }
+        });
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super String> subscriber) {
+        Objects.requireNonNull(subscriber);
+        boolean rejected;
+        synchronized (this) {
+            rejected = downstream != null;
+            if (!rejected) {
+                downstream = subscriber;
+            }
+        }
+        if (rejected) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("only one subscriber is supported"));
+            return;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    error = new IllegalArgumentException("request must be positive: " + n);
+                    cancelUpstream();
+                } else {
+                    add(n);
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                cancelUpstream();
+            }
+        });
+        // no signals reach the subscriber before onSubscribe has returned
+        subscribed = true;
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription);
+        if (upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        if (cancelled) {
+            subscription.cancel();
+        }
+        drain();
+    }
+
+    @Override
+    public void onNext(CharSequence chunk) {
+        chunks.offer(Objects.requireNonNull(chunk));
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = Objects.requireNonNull(throwable);
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    private void add(long n) {
+        while (true) {
+            long r = requested.get();
+            long next = r + n < 0 ? Long.MAX_VALUE : r + n;
+            if (requested.compareAndSet(r, next)) {
+                return;
+            }
+        }
+    }
+
+    private void cancelUpstream() {
+        Flow.Subscription s = upstream;
+        if (s != null) {
+            s.cancel();
+        }
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        while (true) {
+            if (subscribed && !terminated) {
+                emit(downstream);
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    private void emit(Flow.Subscriber<? super String> child) {
+        long r = requested.get();
+        long e = 0;
+        while (true) {
+            if (cancelled) {
+                lines.clear();
+                chunks.clear();
+                terminated = true;
+                return;
+            }
+            Throwable t = error;
+            if (t != null) {
+                lines.clear();
+                chunks.clear();
+                terminated = true;
+                child.onError(t);
+                return;
+            }
+            if (!lines.isEmpty()) {
+                if (e == r) {
+                    break;
+                }
+                child.onNext(lines.poll());
+                e++;
+                continue;
+            }
+            CharSequence chunk = chunks.poll();
+            if (chunk != null) {
+                upstreamRequested = false;
+                try {
+                    session.feed(chunk);
+                } catch (RuntimeException ex) {
+                    error = ex;
+                    cancelUpstream();
+                }
+                continue;
+            }
+            if (upstreamDone && !finished) {
+                finished = true;
+                try {
+                    session.finish();
+                } catch (RuntimeException ex) {
+                    error = ex;
+                    continue;
+                }
+                if (building) {
+                    lines.add(line.toString());
+                    line.setLength(0);
+                }
+                continue;
+            }
+            if (finished) {
+                terminated = true;
+                child.onComplete();
+                return;
+            }
+            Flow.Subscription s = upstream;
+            if (e < r && !upstreamRequested && s != null) {
+                upstreamRequested = true;
+                s.request(1);
+            }
+            break;
+        }
+        if (e != 0 && r != Long.MAX_VALUE) {
+            requested.addAndGet(-e);
+        }
+    }
+}
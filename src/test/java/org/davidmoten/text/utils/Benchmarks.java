@@ -1,5 +1,6 @@
 package org.davidmoten.text.utils;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
@@ -7,6 +8,9 @@ import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
 
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Scope;
@@ -16,7 +20,26 @@ import org.openjdk.jmh.annotations.State;
 public class Benchmarks {
 
     private static final String text = createText();
+    private static final byte[] TEXT_UTF8 = text.getBytes(StandardCharsets.UTF_8);
     private static final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128 * 1024);
+    private static final File INPUT_FILE = new File("src/test/resources/the-black-gang.txt");
+    private static final File OUTPUT_FILE = new File("target/benchmark-output.txt");
+    private static final Wrapper WRAPPER = WordWrap.configure().maxWidth(80).build();
+    private static final Wrapper WRAPPER_20 = WordWrap.configure().maxWidth(20).build();
+    // many short independent strings like table cells
+    private static final List<String> SENTENCES = Arrays.asList(text.split("(?<=\\.) "));
+    // stands in for an expensive measurement like font metrics
+    private static final Function<CharSequence, Number> SLOW_WIDTH = s -> s.toString().chars()
+            .mapToDouble(ch -> Character.isUpperCase(ch) ? 1.4 : Character.isLetter(ch) ? 1 : 0.6)
+            .sum();
+    private static final Wrapper WRAPPER_SLOW = WordWrap.configure().maxWidth(20)
+            .stringWidth(SLOW_WIDTH).build();
+    private static final Wrapper WRAPPER_SLOW_OPTIMAL = WordWrap.configure().maxWidth(20)
+            .stringWidth(SLOW_WIDTH).optimalFit(true).build();
+    private static final Wrapper WRAPPER_SLOW_OPTIMAL_CACHED = WordWrap.configure().maxWidth(20)
+            .stringWidth(SLOW_WIDTH).optimalFit(true).cacheWidths(1 << 18).build();
+    private static final Wrapper WRAPPER_SLOW_SAMPLED = WordWrap.configure().maxWidth(20)
+            .charWidthModel(CharWidthTable.sample(SLOW_WIDTH, ' ', '~')).build();
 
     @Benchmark
     public int wrapNovel() {
@@ -26,6 +49,71 @@ public class Benchmarks {
         return bytes.size();
     }
 
+    @Benchmark
+    public int wrapNovelUtf8Streams() throws IOException {
+        Writer out = createWriter();
+        WordWrap.fromUtf8(new ByteArrayInputStream(TEXT_UTF8)) //
+                .maxWidth(80) //
+                .wrap(out);
+        out.flush();
+        return bytes.size();
+    }
+
+    @Benchmark
+    public int wrapNovelUtf8Bytes() {
+        bytes.reset();
+        WRAPPER.wrapUtf8(TEXT_UTF8, 0, TEXT_UTF8.length, bytes);
+        return bytes.size();
+    }
+
+    @Benchmark
+    public int wrapManyStringsLoop() {
+        int lines = 0;
+        for (String s : SENTENCES) {
+            lines += WordWrap.from(s).maxWidth(20).wrapToList().size();
+        }
+        return lines;
+    }
+
+    @Benchmark
+    public WrappedBatch wrapManyStringsBatch() {
+        return WRAPPER_20.wrapAll(SENTENCES);
+    }
+
+    @Benchmark
+    public WrappedBatch wrapManyStringsSlowWidth() {
+        return WRAPPER_SLOW.wrapAll(SENTENCES);
+    }
+
+    @Benchmark
+    public WrappedBatch wrapManyStringsSlowWidthOptimal() {
+        return WRAPPER_SLOW_OPTIMAL.wrapAll(SENTENCES);
+    }
+
+    @Benchmark
+    public WrappedBatch wrapManyStringsSlowWidthOptimalCached() {
+        return WRAPPER_SLOW_OPTIMAL_CACHED.wrapAll(SENTENCES);
+    }
+
+    @Benchmark
+    public WrappedBatch wrapManyStringsSlowWidthSampled() {
+        return WRAPPER_SLOW_SAMPLED.wrapAll(SENTENCES);
+    }
+
+    @Benchmark
+    public long wrapFileStreams() {
+        WordWrap.from(INPUT_FILE, StandardCharsets.UTF_8) //
+                .maxWidth(80) //
+                .wrap(OUTPUT_FILE, StandardCharsets.UTF_8);
+        return OUTPUT_FILE.length();
+    }
+
+    @Benchmark
+    public long wrapFileMapped() {
+        WRAPPER.wrapFile(INPUT_FILE.toPath(), OUTPUT_FILE.toPath(), StandardCharsets.UTF_8);
+        return OUTPUT_FILE.length();
+    }
+
     private static Writer createWriter() {
         bytes.reset();
         return new OutputStreamWriter(bytes, StandardCharsets.UTF_8);
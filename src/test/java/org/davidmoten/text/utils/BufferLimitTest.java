@@ -0,0 +1,228 @@
+package org.davidmoten.text.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BufferLimitTest {
+
+    @Test
+    public void testUnbreakableWordWrittenAsItArrives() {
+        String token = token(10000);
+        String text = "see " + token + ", then\n" + token + "\nand " + token;
+        Wrapper unlimited = WordWrap.configure().maxWidth(20).breakWords(false).build();
+        Wrapper limited = WordWrap.configure().maxWidth(20).breakWords(false)
+                .maxBufferChars(100).build();
+        assertEquals(Arrays.asList("see", token + ",", "then", token, "and", token),
+                limited.wrapToList(text));
+        checkSameOutput(unlimited, limited, text);
+    }
+
+    @Test
+    public void testSameOutputOnRandomTextWithoutForcedLines() {
+        Random r = new Random(13);
+        String[] alphabet = { "ab", "c", " ", ".", ",", "\n", "\r\n", token(50), token(120),
+                "𝐀" };
+        for (int n = 0; n < 2000; n++) {
+            StringBuilder b = new StringBuilder();
+            int count = r.nextInt(30);
+            for (int i = 0; i < count; i++) {
+                b.append(alphabet[r.nextInt(alphabet.length)]);
+            }
+            int maxWidth = 1 + r.nextInt(12);
+            boolean insertHyphens = r.nextBoolean();
+            Wrapper unlimited = WordWrap.configure().maxWidth(maxWidth).breakWords(false)
+                    .insertHyphens(insertHyphens).build();
+            Wrapper limited = WordWrap.configure().maxWidth(maxWidth).breakWords(false)
+                    .insertHyphens(insertHyphens).maxBufferChars(32 + r.nextInt(20)).build();
+            checkSameOutput(unlimited, limited, b.toString());
+        }
+    }
+
+    @Test
+    public void testBufferStaysSmall() throws IOException {
+        CountingConsumer out = new CountingConsumer();
+        WrapEngine engine = new WrapEngine(out, null, 20, null, WidthFunction.CHAR_COUNT, null,
+                null, CharClasses.DEFAULT, true, false, false, false, 1000, false, null);
+        engine.accept("see ", 0, 4);
+        char[] chunk = token(4096).toCharArray();
+        for (int i = 0; i < 1000; i++) {
+            engine.accept(chunk, 0, chunk.length);
+        }
+        assertTrue(engine.bufferCapacity() <= 1001);
+        engine.accept(" end", 0, 4);
+        engine.finish();
+        assertEquals(2, out.lines);
+        assertEquals(4096 * 1000 + "seeend".length(), out.chars);
+    }
+
+    @Test
+    public void testLargeBufferReleasedAtLineFeed() throws IOException {
+        CountingConsumer out = new CountingConsumer();
+        WrapEngine engine = new WrapEngine(out, null, 20, null, WidthFunction.CHAR_COUNT, null,
+                null, CharClasses.DEFAULT, true, false, false, false, Integer.MAX_VALUE, false,
+                null);
+        engine.accept(token(100000), 0, 100000);
+        assertTrue(engine.bufferCapacity() >= 100000);
+        engine.accept("\nabc", 0, 4);
+        assertTrue(engine.bufferCapacity() <= WrapEngine.RETAINED_BUFFER_CHARS);
+        engine.finish();
+        assertEquals(100003, out.chars);
+    }
+
+    @Test
+    public void testForcedLineWhenNothingFits() {
+        // nothing ever overflows a line so only the limit ends lines
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            b.append("word ");
+        }
+        b.append("end");
+        List<String> lines = WordWrap.from(b).maxWidth(10).stringWidth(s -> 0)
+                .maxBufferChars(64).wrapToList();
+        assertTrue(lines.size() > 50);
+        for (String line : lines) {
+            assertTrue(line, line.length() <= 64);
+            assertEquals(line.trim(), line);
+        }
+        assertEquals(b.toString(), String.join(" ", lines));
+    }
+
+    @Test
+    public void testLimitBelowLineLengthForcesBreaksInOrdinaryWords() {
+        String text = "aaaaaaaa bb cc dd eeeeeeeeeeeee ff";
+        assertEquals("aaaaaaaa bb cc dd\neeeeeeeeeeeee ff",
+                WordWrap.from(text).maxWidth(20).breakWords(false).wrap());
+        // no word here is wider than a line so none is written as it arrives,
+        // the limit ends every line
+        assertEquals("aaaaa\naaa b\nb cc\ndd ee\neeeee\neeeee\ne ff", WordWrap.from(text)
+                .maxWidth(20).breakWords(false).maxBufferChars(5).wrap());
+    }
+
+    @Test
+    public void testFailOnBufferFull() {
+        List<String> lines = new ArrayList<>();
+        Wrapper w = WordWrap.configure().maxWidth(5).breakWords(false).maxBufferChars(50)
+                .failOnBufferFull(true).build();
+        try {
+            w.wrap("ab cd " + token(1000), new LineConsumer() {
+
+                @Override
+                public void write(char[] chars, int offset, int length) {
+                    lines.add(new String(chars, offset, length));
+                }
+
+                @Override
+                public void writeNewLine() {
+                }
+            });
+            fail();
+        } catch (BufferFullException e) {
+            assertEquals(50, e.maxBufferChars());
+            assertEquals(Arrays.asList("ab cd"), lines);
+        }
+    }
+
+    @Test
+    public void testOptimalFitEndsParagraphAtLastWhitespace() {
+        Random r = new Random(3);
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            b.append(token(1 + r.nextInt(8))).append(' ');
+        }
+        String text = b.toString().trim();
+        List<String> lines = WordWrap.from(text).maxWidth(20).optimalFit(true)
+                .maxBufferChars(100).wrapToList();
+        for (String line : lines) {
+            assertTrue(line, line.length() <= 20);
+        }
+        assertEquals(text, String.join(" ", lines));
+        // same lines via spans
+        LineBreaks breaks = WordWrap.configure().maxWidth(20).optimalFit(true)
+                .maxBufferChars(100).build().breaks(text);
+        assertEquals(lines.size(), breaks.size());
+        for (int i = 0; i < breaks.size(); i++) {
+            assertEquals(lines.get(i), text.substring(breaks.start(i), breaks.end(i)));
+        }
+    }
+
+    @Test
+    public void testOptimalFitWhitespaceFillingBufferWritesNoEmptyLines() {
+        String spaces = String.join("", Collections.nCopies(200, " "));
+        String text = "ab" + spaces + "cd\nef";
+        assertEquals("ab\ncd\nef", WordWrap.from(text).maxWidth(10).optimalFit(true).wrap());
+        assertEquals("ab\ncd\nef", WordWrap.from(text).maxWidth(10).optimalFit(true)
+                .maxBufferChars(50).wrap());
+        // an indent longer than the buffer is dropped
+        assertEquals("ab", WordWrap.from(spaces + "ab").maxWidth(10).optimalFit(true)
+                .maxBufferChars(50).wrap());
+    }
+
+    @Test
+    public void testOptimalFitFail() {
+        try {
+            WordWrap.from(token(200)).optimalFit(true).maxBufferChars(100).failOnBufferFull(true)
+                    .wrap();
+            fail();
+        } catch (BufferFullException e) {
+            assertEquals(100, e.maxBufferChars());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxBufferCharsMustBePositive() {
+        WordWrap.configure().maxBufferChars(0);
+    }
+
+    private static void checkSameOutput(Wrapper unlimited, Wrapper limited, String text) {
+        assertEquals(text, unlimited.wrap(text), limited.wrap(text));
+        LineBreaks a = unlimited.breaks(text);
+        LineBreaks b = limited.breaks(text);
+        assertEquals(text, a.size(), b.size());
+        for (int i = 0; i < a.size(); i++) {
+            assertEquals(text, a.start(i), b.start(i));
+            assertEquals(text, a.end(i), b.end(i));
+            assertEquals(text, a.hyphenated(i), b.hyphenated(i));
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        limited.wrapUtf8(bytes, 0, bytes.length, out);
+        assertEquals(text, unlimited.wrap(text),
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static String token(int length) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            b.append((char) ('a' + i % 26));
+        }
+        return b.toString();
+    }
+
+    private static final class CountingConsumer implements LineConsumer {
+
+        long chars;
+        long lines;
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            this.chars += length;
+        }
+
+        @Override
+        public void writeNewLine() {
+            lines++;
+        }
+    }
+}
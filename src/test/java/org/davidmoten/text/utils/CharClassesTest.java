@@ -0,0 +1,34 @@
+package org.davidmoten.text.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class CharClassesTest {
+
+    @Test
+    public void testDefaultClasses() {
+        CharClasses c = CharClasses.DEFAULT;
+        assertEquals(CharClasses.WORD, c.classOf('a'));
+        assertEquals(CharClasses.WORD, c.classOf('é'));
+        assertEquals(CharClasses.WORD, c.classOf('中'));
+        // default extra word chars are not treated as punctuation
+        assertEquals(CharClasses.WORD, c.classOf(','));
+        assertEquals(CharClasses.PUNCTUATION, c.classOf('-'));
+        assertEquals(CharClasses.PUNCTUATION, c.classOf('('));
+        assertEquals(0, c.classOf(' '));
+        assertEquals(0, c.classOf('1'));
+        assertEquals(0, c.classOf('—'));
+    }
+
+    @Test
+    public void testExtraWordCharsOutsideLatin1DoNotAffectOtherInstances() {
+        CharClasses c = CharClasses.of(WordWrap.toSet("1—"));
+        assertEquals(CharClasses.WORD, c.classOf('1'));
+        assertEquals(CharClasses.WORD, c.classOf('—'));
+        assertEquals(CharClasses.PUNCTUATION, c.classOf(','));
+        assertEquals(0, CharClasses.of(WordWrap.toSet("")).classOf('—'));
+        assertEquals(0, CharClasses.DEFAULT.classOf('—'));
+    }
+
+}
@@ -0,0 +1,85 @@
+package org.davidmoten.text.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CharWidthModelTest {
+
+    private static final CharWidthModel PROPORTIONAL = ch -> ch == 'm' || ch == 'w' ? 1.5
+            : ch == ' ' ? 0.5 : 1;
+
+    private static final CharWidthModel KERNED = new CharWidthModel() {
+
+        @Override
+        public double width(char ch) {
+            return PROPORTIONAL.width(ch);
+        }
+
+        @Override
+        public double kerning(char previous, char ch) {
+            return previous == 'A' && ch == 'V' || previous == 'V' && ch == 'A' ? -0.25 : 0;
+        }
+    };
+
+    @Test
+    public void testWidthOfString() {
+        assertEquals(0, PROPORTIONAL.width(""), 0.00001);
+        assertEquals(4.5, PROPORTIONAL.width("am w"), 0.00001);
+        assertEquals(2.5, KERNED.width("AVA"), 0.00001);
+    }
+
+    @Test
+    public void testWrapUsesModel() {
+        assertEquals("mm-\nmm", WordWrap.from("mmmm").maxWidth(5).charWidthModel(PROPORTIONAL).wrap());
+    }
+
+    @Test
+    public void testSameAsStringWidthOnNovels() {
+        String[] resources = { "/treasure-island-fragment.txt", "/the-black-gang.txt",
+                "/the-importance-of-being-earnest.txt" };
+        for (String resource : resources) {
+            for (int width : new int[] { 5, 20, 80 }) {
+                for (CharWidthModel model : new CharWidthModel[] { PROPORTIONAL, KERNED }) {
+                    assertEquals(
+                            WordWrap.fromClasspathUtf8(resource).maxWidth(width)
+                                    .stringWidth(model::width).wrap(),
+                            WordWrap.fromClasspathUtf8(resource).maxWidth(width)
+                                    .charWidthModel(model).wrap());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSameAsStringWidthOnRandomText() {
+        Random r = new Random(1);
+        String alphabet = "AVmw ab,.;'\n\r-(?!09\t\"";
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder b = new StringBuilder();
+            int n = r.nextInt(60);
+            for (int j = 0; j < n; j++) {
+                b.append(alphabet.charAt(r.nextInt(alphabet.length())));
+            }
+            String text = b.toString();
+            double width = 0.5 + r.nextInt(20) * 0.75;
+            boolean breakWords = r.nextBoolean();
+            boolean insertHyphens = r.nextBoolean();
+            for (CharWidthModel model : new CharWidthModel[] { PROPORTIONAL, KERNED }) {
+                Wrapper expected = WordWrap.configure().maxWidth(width).breakWords(breakWords)
+                        .insertHyphens(insertHyphens).stringWidth(model::width).build();
+                Wrapper actual = WordWrap.configure().maxWidth(width).breakWords(breakWords)
+                        .insertHyphens(insertHyphens).charWidthModel(model).build();
+                assertEquals(text, expected.wrap(text), actual.wrap(text));
+            }
+        }
+    }
+
+    @Test
+    public void testStringWidthReplacesModel() {
+        assertEquals("mmmm", WordWrap.from("mmmm").maxWidth(5).charWidthModel(PROPORTIONAL)
+                .stringWidth(s -> s.length()).wrap());
+    }
+}
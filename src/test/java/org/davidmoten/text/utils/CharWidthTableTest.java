@@ -0,0 +1,116 @@
+package org.davidmoten.text.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+public class CharWidthTableTest {
+
+    // GRINNING FACE
+    private static final String EMOJI = new String(Character.toChars(0x1F600));
+
+    // stands in for a font measurement, not additive in general but is when
+    // called with one char at a time
+    private static final Function<CharSequence, Number> WIDTH = s -> {
+        double w = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            w += ch == 'm' || ch == 'w' ? 1.5 : ch == ' ' ? 0.5 : ch > 0x1000 ? 2 : 1;
+        }
+        return w;
+    };
+
+    @Test
+    public void testSampledRange() {
+        CharWidthTable table = CharWidthTable.sample(WIDTH, ' ', '~');
+        assertEquals(1.5, table.width('m'), 0);
+        assertEquals(0.5, table.width(' '), 0);
+        assertEquals(1, table.width('a'), 0);
+        assertEquals(0, table.kerning('A', 'V'), 0);
+    }
+
+    @Test
+    public void testOutsideRangeMeasuredOnceAndRemembered() {
+        AtomicInteger calls = new AtomicInteger();
+        CharWidthTable table = CharWidthTable.sample(s -> {
+            calls.incrementAndGet();
+            return WIDTH.apply(s);
+        }, 'a', 'z');
+        assertEquals(26, calls.get());
+        assertEquals(2, table.width('一'), 0);
+        assertEquals(2, table.width('一'), 0);
+        assertEquals(1, table.width('\t'), 0);
+        assertEquals(1, table.width('\t'), 0);
+        assertEquals(28, calls.get());
+    }
+
+    @Test
+    public void testOutsideRangeFixedWidth() {
+        AtomicInteger calls = new AtomicInteger();
+        CharWidthTable table = CharWidthTable.sample(s -> {
+            calls.incrementAndGet();
+            return WIDTH.apply(s);
+        }, 'a', 'c', 3);
+        assertEquals(3, calls.get());
+        assertEquals(3, table.width('一'), 0);
+        assertEquals(3, table.width('A'), 0);
+        assertEquals(1, table.width('b'), 0);
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void testSurrogatePairMeasuredAsOneCodePoint() {
+        List<String> measured = new ArrayList<>();
+        CharWidthTable table = CharWidthTable.sample(s -> {
+            measured.add(s.toString());
+            return s.length() == 2 ? 2 : 1;
+        }, 'a', 'z');
+        measured.clear();
+        assertEquals(0, table.width(EMOJI.charAt(0)), 0);
+        assertEquals(0, table.width(EMOJI.charAt(1)), 0);
+        assertEquals(2, table.kerning(EMOJI.charAt(0), EMOJI.charAt(1)), 0);
+        assertEquals(4, table.width(EMOJI + "ab"), 0);
+        assertEquals(Arrays.asList(EMOJI), measured);
+        // a lone surrogate has no width
+        assertEquals(1, table.width("a" + EMOJI.charAt(1)), 0);
+        assertEquals(0, table.kerning('a', 'b'), 0);
+    }
+
+    @Test
+    public void testSurrogatePairOutsideRangeFixedWidth() {
+        CharWidthTable table = CharWidthTable.sample(WIDTH, 'a', 'c', 3);
+        assertEquals(0, table.width(EMOJI.charAt(0)), 0);
+        assertEquals(3, table.width(EMOJI), 0);
+    }
+
+    @Test
+    public void testSameAsStringWidthOnNovel() {
+        CharWidthTable table = CharWidthTable.sample(WIDTH, ' ', '~');
+        for (int width : new int[] { 5, 20, 80 }) {
+            assertEquals(
+                    WordWrap.fromClasspathUtf8("/the-black-gang.txt").maxWidth(width)
+                            .stringWidth(WIDTH).wrap(),
+                    WordWrap.fromClasspathUtf8("/the-black-gang.txt").maxWidth(width)
+                            .charWidthModel(table).wrap());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyRange() {
+        CharWidthTable.sample(WIDTH, 'b', 'a');
+    }
+
+    @Test
+    public void testWholeCharRange() {
+        CharWidthTable table = CharWidthTable.sample(WIDTH, Character.MIN_VALUE,
+                Character.MAX_VALUE);
+        assertEquals(2, table.width(Character.MAX_VALUE), 0);
+        assertEquals(1, table.width(Character.MIN_VALUE), 0);
+    }
+}
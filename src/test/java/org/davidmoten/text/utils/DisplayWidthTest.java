@@ -0,0 +1,152 @@
+package org.davidmoten.text.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DisplayWidthTest {
+
+    private static final DisplayWidth DISPLAY = DisplayWidth.instance();
+
+    // GRINNING FACE
+    private static final String EMOJI = new String(Character.toChars(0x1F600));
+
+    // CJK UNIFIED IDEOGRAPH-20000 (Extension B)
+    private static final String IDEOGRAPH_B = new String(Character.toChars(0x20000));
+
+    @Test
+    public void testNarrow() {
+        assertEquals(1, DISPLAY.width('a'), 0);
+        assertEquals(1, DISPLAY.width(' '), 0);
+        assertEquals(1, DISPLAY.width('é'), 0);
+        assertEquals(1, DISPLAY.width('\u00AD'), 0);
+        // East Asian Ambiguous is narrow
+        assertEquals(1, DISPLAY.width('±'), 0);
+        assertEquals(1, DisplayWidth.codePointWidth(0x1D400));
+    }
+
+    @Test
+    public void testWide() {
+        assertEquals(2, DISPLAY.width('一'), 0);
+        assertEquals(2, DISPLAY.width('가'), 0);
+        assertEquals(2, DISPLAY.width('Ａ'), 0);
+        assertEquals(2, DISPLAY.width('\u3000'), 0);
+        assertEquals(2, DISPLAY.width('ᄀ'), 0);
+        assertEquals(2, DisplayWidth.codePointWidth(0x1F600));
+        assertEquals(2, DisplayWidth.codePointWidth(0x20000));
+        assertEquals(2, DisplayWidth.codePointWidth(0x3FFFD));
+        assertEquals(1, DisplayWidth.codePointWidth(0x3FFFE));
+    }
+
+    @Test
+    public void testZeroWidth() {
+        // combining acute accent
+        assertEquals(0, DISPLAY.width('\u0301'), 0);
+        // combining mark within a wide range
+        assertEquals(0, DISPLAY.width('\u3099'), 0);
+        assertEquals(0, DISPLAY.width('\u200B'), 0);
+        assertEquals(0, DISPLAY.width('\u200D'), 0);
+        assertEquals(0, DISPLAY.width('\u1160'), 0);
+        assertEquals(0, DISPLAY.width('\t'), 0);
+        assertEquals(0, DISPLAY.width('\uD83D'), 0);
+        // variation selector supplement
+        assertEquals(0, DisplayWidth.codePointWidth(0xE0100));
+    }
+
+    @Test
+    public void testZeroWidthDoesNotDependOnJdk() {
+        // TOTO SIGN RISING TONE, a mark added in Unicode 14.0 (after Java 17)
+        assertEquals(0, DisplayWidth.codePointWidth(0x1E2AE));
+        // ARABIC POUND MARK ABOVE, a format character added in Unicode 14.0
+        assertEquals(0, DISPLAY.width('\u0890'), 0);
+        // an unassigned code point is narrow
+        assertEquals(1, DisplayWidth.codePointWidth(0x0378));
+        assertEquals(1, DisplayWidth.codePointWidth(0xE0000));
+    }
+
+    @Test
+    public void testSurrogatePairWidthIsKerning() {
+        assertEquals(2, DISPLAY.kerning(EMOJI.charAt(0), EMOJI.charAt(1)), 0);
+        assertEquals(0, DISPLAY.kerning('a', 'b'), 0);
+        assertEquals(2, DISPLAY.width(EMOJI), 0);
+        assertEquals(5, DISPLAY.width("a" + EMOJI + IDEOGRAPH_B), 0);
+    }
+
+    @Test
+    public void testStringWidthSameAsDefaultSum() {
+        CharWidthModel sum = new CharWidthModel() {
+
+            @Override
+            public double width(char ch) {
+                return DISPLAY.width(ch);
+            }
+
+            @Override
+            public double kerning(char previous, char ch) {
+                return DISPLAY.kerning(previous, ch);
+            }
+        };
+        Random r = new Random(5);
+        String[] alphabet = { "a", " ", "一", "\u0301", EMOJI, IDEOGRAPH_B, "\uD800", "\uDC00" };
+        for (int n = 0; n < 1000; n++) {
+            StringBuilder b = new StringBuilder();
+            int count = r.nextInt(20);
+            for (int i = 0; i < count; i++) {
+                b.append(alphabet[r.nextInt(alphabet.length)]);
+            }
+            assertEquals(b.toString(), sum.width(b), DISPLAY.width(b), 0);
+        }
+    }
+
+    @Test
+    public void testWrapCjk() {
+        assertEquals("你好\n世界", WordWrap.from("你好世界").maxWidth(4).insertHyphens(false)
+                .charWidthModel(DISPLAY).wrap());
+        assertEquals("你好\n世界", WordWrap.from("你好世界").maxWidth(5).insertHyphens(false)
+                .charWidthModel(DISPLAY).wrap());
+    }
+
+    @Test
+    public void testWrapCombiningMarksAndEmoji() {
+        // decomposed accents take no columns
+        String cafe = "cafe\u0301";
+        assertEquals(cafe + " " + cafe + "\n" + cafe,
+                WordWrap.from(cafe + " " + cafe + " " + cafe).maxWidth(9)
+                        .charWidthModel(DISPLAY).wrap());
+        assertEquals("hi " + EMOJI + "\n" + EMOJI + " x",
+                WordWrap.from("hi " + EMOJI + " " + EMOJI + " x").maxWidth(5)
+                        .charWidthModel(DISPLAY).wrap());
+    }
+
+    @Test
+    public void testLinesFitOnRandomText() {
+        Random r = new Random(9);
+        String[] alphabet = { "a", "b", " ", " ", "一", "\u0301", EMOJI };
+        for (int n = 0; n < 1000; n++) {
+            StringBuilder b = new StringBuilder();
+            int count = r.nextInt(60);
+            for (int i = 0; i < count; i++) {
+                b.append(alphabet[r.nextInt(alphabet.length)]);
+            }
+            int maxWidth = 3 + r.nextInt(10);
+            List<String> lines = WordWrap.from(b).maxWidth(maxWidth).breakWords(false)
+                    .charWidthModel(DISPLAY).wrapToList();
+            for (String line : lines) {
+                String trimmed = line.trim();
+                // only a line holding a single word may be too wide
+                assertTrue(b + "\n" + lines,
+                        DISPLAY.width(trimmed) <= maxWidth || trimmed.indexOf(' ') == -1);
+            }
+            // the model gives the same result as measuring whole strings
+            assertEquals(lines, WordWrap.from(b).maxWidth(maxWidth).breakWords(false)
+                    .stringWidth(DISPLAY::width).wrapToList());
+            assertEquals(WordWrap.from(b).maxWidth(maxWidth).stringWidth(DISPLAY::width)
+                    .wrapToList(),
+                    WordWrap.from(b).maxWidth(maxWidth).charWidthModel(DISPLAY).wrapToList());
+        }
+    }
+}
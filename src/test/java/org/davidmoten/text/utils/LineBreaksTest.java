@@ -0,0 +1,112 @@
+package org.davidmoten.text.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LineBreaksTest {
+
+    @Test
+    public void testBreaks() {
+        String text = "hello there hellothere";
+        LineBreaks b = WordWrap.configure().maxWidth(6).build().breaks(text);
+        assertEquals(4, b.size());
+        assertEquals(0, b.start(0));
+        assertEquals(5, b.end(0));
+        assertFalse(b.hyphenated(0));
+        assertEquals(6, b.start(1));
+        assertEquals(11, b.end(1));
+        assertEquals("hello", text.substring(b.start(2), b.end(2)));
+        assertTrue(b.hyphenated(2));
+        assertEquals("there", text.substring(b.start(3), b.end(3)));
+    }
+
+    @Test
+    public void testEmptyLines() {
+        String text = "a\n\nb";
+        LineBreaks b = WordWrap.configure().build().breaks(text);
+        assertEquals(3, b.size());
+        assertEquals(2, b.start(1));
+        assertEquals(2, b.end(1));
+    }
+
+    @Test
+    public void testCharArraySliceUsesArrayIndexes() {
+        char[] chars = "xxhello therexx".toCharArray();
+        LineBreaks b = WordWrap.configure().maxWidth(6).build().breaks(chars, 2, 11,
+                new LineBreaks());
+        assertEquals(2, b.size());
+        assertEquals(2, b.start(0));
+        assertEquals(7, b.end(0));
+        assertEquals(8, b.start(1));
+        assertEquals(13, b.end(1));
+    }
+
+    @Test
+    public void testReuse() {
+        Wrapper w = WordWrap.configure().maxWidth(6).build();
+        LineBreaks b = new LineBreaks(1);
+        w.breaks("hello there how are you", b);
+        w.breaks("hello", b);
+        assertEquals(1, b.size());
+        assertEquals(5, b.end(0));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testIndexOutOfBounds() {
+        WordWrap.configure().build().breaks("hello").start(1);
+    }
+
+    @Test
+    public void testSameLinesAsWrapToListOnNovels() throws IOException {
+        for (String name : new String[] { "treasure-island-fragment.txt", "the-black-gang.txt",
+                "the-importance-of-being-earnest.txt" }) {
+            String text = new String(
+                    Files.readAllBytes(new File("src/test/resources/" + name).toPath()),
+                    StandardCharsets.UTF_8);
+            for (int width : new int[] { 5, 20, 80 }) {
+                checkSameAsWrapToList(WordWrap.configure().maxWidth(width).build(), text);
+            }
+        }
+    }
+
+    @Test
+    public void testSameLinesAsWrapToListOnRandomText() {
+        Random r = new Random(7);
+        String alphabet = "abcde   ,.;'\n\r-(?!09\t\"";
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder b = new StringBuilder();
+            int n = r.nextInt(60);
+            for (int j = 0; j < n; j++) {
+                b.append(alphabet.charAt(r.nextInt(alphabet.length())));
+            }
+            Wrapper w = WordWrap.configure() //
+                    .maxWidth(1 + r.nextInt(12)) //
+                    .breakWords(r.nextBoolean()) //
+                    .insertHyphens(r.nextBoolean()) //
+                    .build();
+            checkSameAsWrapToList(w, b.toString());
+        }
+    }
+
+    private static void checkSameAsWrapToList(Wrapper w, String text) {
+        LineBreaks b = w.breaks(text);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < b.size(); i++) {
+            lines.add(text.substring(b.start(i), b.end(i)).replace("\r", "")
+                    + (b.hyphenated(i) ? "-" : ""));
+        }
+        List<String> expected = w.wrapToList(text);
+        assertEquals(text, expected, lines);
+    }
+}
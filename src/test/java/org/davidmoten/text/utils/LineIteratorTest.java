@@ -0,0 +1,127 @@
+package org.davidmoten.text.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class LineIteratorTest {
+
+    @Test
+    public void testSameAsWrapToListOnRandomText() {
+        Random r = new Random(5);
+        String alphabet = "abcde   ,.;'\n\r-(?!09\t\"";
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder b = new StringBuilder();
+            int n = r.nextInt(60);
+            for (int j = 0; j < n; j++) {
+                b.append(alphabet.charAt(r.nextInt(alphabet.length())));
+            }
+            String text = b.toString();
+            Wrapper w = WordWrap.configure() //
+                    .maxWidth(1 + r.nextInt(12)) //
+                    .breakWords(r.nextBoolean()) //
+                    .insertHyphens(r.nextBoolean()) //
+                    .build();
+            List<String> expected = w.wrapToList(text);
+            assertEquals(text, expected, w.lines(text).collect(Collectors.toList()));
+            assertEquals(text, expected,
+                    w.lines(new StringReader(text)).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testSameAsWrapToListOnNovel() throws IOException {
+        String text = new String(
+                Files.readAllBytes(new File("src/test/resources/the-black-gang.txt").toPath()),
+                StandardCharsets.UTF_8);
+        Wrapper w = WordWrap.configure().maxWidth(20).build();
+        assertEquals(w.wrapToList(text),
+                w.lines(new StringReader(text)).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testEarlyTerminationStopsReadingUnboundedSource() {
+        CountingReader reader = new CountingReader();
+        List<String> lines = WordWrap.configure().maxWidth(12).build().lines(reader).limit(3)
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList("hello there", "hello there", "hello there"), lines);
+        // only the first buffer was read
+        assertTrue(reader.count <= 8192);
+    }
+
+    @Test
+    public void testIteratorContract() {
+        Iterator<String> it = WordWrap.configure().maxWidth(6).build().lines("hello there")
+                .iterator();
+        assertTrue(it.hasNext());
+        assertTrue(it.hasNext());
+        assertEquals("hello", it.next());
+        assertEquals("there", it.next());
+        assertFalse(it.hasNext());
+        try {
+            it.next();
+        } catch (NoSuchElementException e) {
+            // expected
+            return;
+        }
+        throw new AssertionError("expected NoSuchElementException");
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, WordWrap.from("").lines().count());
+    }
+
+    @Test
+    public void testBuilderClosesReaderWhenStreamClosed() {
+        AtomicBoolean closed = new AtomicBoolean();
+        Reader reader = new StringReader("hello there") {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+        // as used for sources opened by the builder (file, classpath)
+        try (Stream<String> lines = WordWrap.from(reader, true).maxWidth(6).lines()) {
+            assertEquals("hello", lines.findFirst().get());
+            assertFalse(closed.get());
+        }
+        assertTrue(closed.get());
+    }
+
+    private static final class CountingReader extends Reader {
+
+        private static final String TEXT = "hello there ";
+
+        long count;
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            for (int i = 0; i < len; i++) {
+                cbuf[off + i] = TEXT.charAt((int) (count++ % TEXT.length()));
+            }
+            return len;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
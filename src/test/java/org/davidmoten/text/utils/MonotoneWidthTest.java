@@ -0,0 +1,110 @@
+package org.davidmoten.text.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+public class MonotoneWidthTest {
+
+    private static final Function<CharSequence, Number> PROPORTIONAL = s -> {
+        double w = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            w += ch == 'm' ? 1.5 : ch == 'i' ? 0.5 : Character.isLowSurrogate(ch) ? 0 : 1;
+        }
+        return w;
+    };
+
+    @Test
+    public void testLongTokenSameOutputWithFewerWidthCalls() {
+        StringBuilder b = new StringBuilder("see ");
+        for (int i = 0; i < 10000; i++) {
+            b.append((char) ('a' + i % 26));
+        }
+        b.append(" here");
+        String text = b.toString();
+        AtomicLong calls = new AtomicLong();
+        AtomicLong monotoneCalls = new AtomicLong();
+        String expected = wrapper(40, true, false, calls).wrap(text);
+        assertEquals(expected, wrapper(40, true, true, monotoneCalls).wrap(text));
+        assertTrue(expected.split("\n").length > 250);
+        assertTrue(calls + " " + monotoneCalls, monotoneCalls.get() * 10 < calls.get());
+    }
+
+    @Test
+    public void testSameOutputOnRandomText() {
+        Random r = new Random(11);
+        String[] alphabet = { "a", "b", "m", "i", " ", " ", ",", ".", "-", "\n", "\uD835\uDC00",
+                "xxxxxxxxxxxxxxxx", "mmmmmmmmmm", "iiiiiiiiiiii" };
+        for (int n = 0; n < 3000; n++) {
+            StringBuilder b = new StringBuilder();
+            int count = r.nextInt(30);
+            for (int i = 0; i < count; i++) {
+                b.append(alphabet[r.nextInt(alphabet.length)]);
+            }
+            String text = b.toString();
+            double maxWidth = r.nextInt(4) == 0 ? 0.5 + r.nextInt(3) : 1 + r.nextInt(15);
+            boolean insertHyphens = r.nextBoolean();
+            Wrapper w = wrapper(maxWidth, insertHyphens, false, new AtomicLong());
+            Wrapper m = wrapper(maxWidth, insertHyphens, true, new AtomicLong());
+            assertEquals(text, w.wrap(text), m.wrap(text));
+            assertEquals(text, starts(w.breaks(text)), starts(m.breaks(text)));
+            // chars fed one at a time
+            StringBuilder out = new StringBuilder();
+            WrapSession session = m.session(new LineConsumer() {
+
+                @Override
+                public void write(char[] chars, int offset, int length) {
+                    out.append(chars, offset, length);
+                }
+
+                @Override
+                public void writeNewLine() {
+                    out.append('\n');
+                }
+            });
+            for (int i = 0; i < text.length(); i++) {
+                session.feed(text.substring(i, i + 1));
+            }
+            session.finish();
+            assertEquals(text, w.wrap(text), out.toString());
+        }
+    }
+
+    @Test
+    public void testNoEffectWithoutBreakingWords() {
+        String text = "abcdefghijklmnopqrstuvwxyz abc";
+        assertEquals("abcdefghijklmnopqrstuvwxyz\nabc", WordWrap.from(text).maxWidth(5)
+                .breakWords(false).monotoneWidth(true).wrap());
+    }
+
+    private static Wrapper wrapper(double maxWidth, boolean insertHyphens, boolean monotone,
+            AtomicLong calls) {
+        return WordWrap.configure() //
+                .maxWidth(maxWidth) //
+                .insertHyphens(insertHyphens) //
+                .stringWidth(s -> {
+                    calls.incrementAndGet();
+                    return PROPORTIONAL.apply(s);
+                }) //
+                .monotoneWidth(monotone) //
+                .build();
+    }
+
+    private static List<Integer> starts(LineBreaks breaks) {
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < breaks.size(); i++) {
+            list.add(breaks.start(i));
+            list.add(breaks.end(i));
+            list.add(breaks.hyphenated(i) ? 1 : 0);
+        }
+        return list;
+    }
+}
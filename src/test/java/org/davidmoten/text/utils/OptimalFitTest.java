@@ -0,0 +1,182 @@
+package org.davidmoten.text.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class OptimalFitTest {
+
+    @Test
+    public void testLessRaggedThanGreedy() {
+        String text = "aaa bb cc ddddd";
+        assertEquals("aaa bb\ncc\nddddd", WordWrap.from(text).maxWidth(6).wrap());
+        assertEquals("aaa\nbb cc\nddddd", WordWrap.from(text).maxWidth(6).optimalFit(true).wrap());
+    }
+
+    @Test
+    public void testParagraphsAndBlankLines() {
+        assertEquals("aaa bb\ncc\n\nx\n",
+                WordWrap.from("aaa bb cc  \n   \nx\n").maxWidth(6).optimalFit(true).wrap());
+    }
+
+    @Test
+    public void testIndentKeptWithFirstWord() {
+        assertEquals("  aa bb\ncc",
+                WordWrap.from("  aa bb cc").maxWidth(7).optimalFit(true).wrap());
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals("", WordWrap.from("").optimalFit(true).wrap());
+        assertEquals("\n", WordWrap.from("\n").optimalFit(true).wrap());
+    }
+
+    @Test
+    public void testLongWordBroken() {
+        assertEquals("ab\nabcde-\nfghij-\nklmnop\nqr",
+                WordWrap.from("ab abcdefghijklmnop qr").maxWidth(6).optimalFit(true).wrap());
+    }
+
+    @Test
+    public void testLongWordBrokenWithoutHyphens() {
+        assertEquals("abcdef\nghij k",
+                WordWrap.from("abcdefghij k").maxWidth(6).insertHyphens(false).optimalFit(true)
+                        .wrap());
+    }
+
+    @Test
+    public void testLongTokenMeasuredInLinearTime() {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            b.append((char) ('a' + i % 26));
+        }
+        String text = b.toString();
+        AtomicLong charsMeasured = new AtomicLong();
+        String wrapped = WordWrap.from(text) //
+                .maxWidth(40) //
+                .widthFunction((chars, start, end) -> {
+                    charsMeasured.addAndGet(end - start);
+                    return end - start;
+                }) //
+                .optimalFit(true) //
+                .wrap();
+        assertEquals(WordWrap.from(text).maxWidth(40).wrap(), wrapped);
+        // measuring the rest of the token once per line would be about 10^8
+        assertTrue(String.valueOf(charsMeasured.get()), charsMeasured.get() < 50L * text.length());
+    }
+
+    @Test
+    public void testLongWordNotBroken() {
+        assertEquals("ab\nabcdefghijklmnop\nqr", WordWrap.from("ab abcdefghijklmnop qr")
+                .maxWidth(6).breakWords(false).optimalFit(true).wrap());
+    }
+
+    @Test
+    public void testCostIsMinimalOnRandomText() {
+        Random r = new Random(3);
+        for (int n = 0; n < 2000; n++) {
+            int maxWidth = 4 + r.nextInt(20);
+            List<String> words = new ArrayList<>();
+            int count = 1 + r.nextInt(30);
+            for (int i = 0; i < count; i++) {
+                words.add(word(r, 1 + r.nextInt(maxWidth)));
+            }
+            String text = String.join(" ", words);
+            List<String> lines = WordWrap.from(text).maxWidth(maxWidth).optimalFit(true)
+                    .wrapToList();
+            double cost = 0;
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                assertTrue(text + "\n" + lines, line.length() <= maxWidth);
+                if (i < lines.size() - 1) {
+                    cost += square(maxWidth - line.length());
+                }
+            }
+            assertEquals(text, String.join(" ", lines));
+            assertEquals(text + "\n" + lines, bruteForceCost(words, maxWidth), cost, 0.000001);
+        }
+    }
+
+    @Test
+    public void testProportionalWidths() {
+        CharWidthModel model = ch -> ch == 'm' ? 2 : 1;
+        String text = "mm a b c mmm dd e";
+        List<String> lines = WordWrap.from(text).maxWidth(7).charWidthModel(model)
+                .optimalFit(true).wrapToList();
+        for (String line : lines) {
+            assertTrue(model.width(line) <= 7);
+        }
+        // same result via stringWidth and widthFunction
+        assertEquals(lines, WordWrap.from(text).maxWidth(7).stringWidth(model::width)
+                .optimalFit(true).wrapToList());
+    }
+
+    @Test
+    public void testAllOutputPathsAgree() {
+        String text = WrapBenchmarks.read("the-black-gang.txt");
+        Wrapper w = WordWrap.configure().maxWidth(30).optimalFit(true).build();
+        String wrapped = w.wrap(text);
+        assertTrue(wrapped.length() > 1000);
+        List<String> lines = w.wrapToList(text);
+        assertEquals(wrapped, String.join("\n", lines));
+        LineBreaks breaks = w.breaks(text);
+        List<String> fromBreaks = new ArrayList<>();
+        for (int i = 0; i < breaks.size(); i++) {
+            String line = text.substring(breaks.start(i), breaks.end(i)).replace("\r", "");
+            fromBreaks.add(breaks.hyphenated(i) ? line + "-" : line);
+        }
+        assertEquals(lines, fromBreaks);
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        w.wrapUtf8(bytes, 0, bytes.length, out);
+        assertEquals(wrapped, new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(wrapped, w.wrapParallel(text));
+        assertEquals(lines, w.wrapAll(Arrays.asList("x", text)).lines(1));
+    }
+
+    private static String word(Random r, int length) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            b.append((char) ('a' + r.nextInt(26)));
+        }
+        return b.toString();
+    }
+
+    private static double bruteForceCost(List<String> words, int maxWidth) {
+        int n = words.size();
+        double[] best = new double[n + 1];
+        for (int i = 1; i <= n; i++) {
+            best[i] = Double.POSITIVE_INFINITY;
+            for (int j = i - 1; j >= 0; j--) {
+                int w = width(words, j, i);
+                if (w > maxWidth) {
+                    break;
+                }
+                double c = i == n ? 0 : square(maxWidth - w);
+                best[i] = Math.min(best[i], best[j] + c);
+            }
+        }
+        return best[n];
+    }
+
+    private static int width(List<String> words, int j, int i) {
+        int w = i - j - 1;
+        for (int k = j; k < i; k++) {
+            w += words.get(k).length();
+        }
+        return w;
+    }
+
+    private static double square(double x) {
+        return x * x;
+    }
+}
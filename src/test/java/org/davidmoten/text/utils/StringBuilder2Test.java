@@ -1,6 +1,8 @@
 package org.davidmoten.text.utils;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
@@ -108,4 +110,30 @@ public class StringBuilder2Test {
     public void testRightTrimSpacesAfterLetters() {
         assertEquals(3, new StringBuilder2("abc   ").rightTrim().length());
     }
+
+    @Test
+    public void testMaxCapacityLimitsGrowth() {
+        StringBuilder2 b = new StringBuilder2();
+        b.maxCapacity(20);
+        for (int i = 0; i < 20; i++) {
+            b.append('a');
+        }
+        assertEquals(20, b.internalArray().length);
+        b.append('b');
+        assertEquals(21, b.internalArray().length);
+    }
+
+    @Test
+    public void testShrink() {
+        StringBuilder2 b = new StringBuilder2();
+        for (int i = 0; i < 1000; i++) {
+            b.append('a');
+        }
+        assertFalse(b.shrink(100));
+        b.setLength(3);
+        assertTrue(b.shrink(100));
+        assertEquals(16, b.internalArray().length);
+        assertEquals("aaa", b.toString());
+        assertFalse(b.shrink(100));
+    }
 }
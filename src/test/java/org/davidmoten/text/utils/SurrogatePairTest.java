@@ -0,0 +1,122 @@
+package org.davidmoten.text.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SurrogatePairTest {
+
+    // MATHEMATICAL BOLD CAPITAL A, a letter outside the BMP
+    private static final String BOLD_A = new String(Character.toChars(0x1D400));
+
+    // GRINNING FACE, not a letter
+    private static final String EMOJI = new String(Character.toChars(0x1F600));
+
+    @Test
+    public void testSupplementaryLetterIsPartOfWord() {
+        assertEquals("xx\na" + BOLD_A + "bcd",
+                WordWrap.from("xx a" + BOLD_A + "bcd").maxWidth(6).wrap());
+    }
+
+    @Test
+    public void testBrokenWordKeepsPairsTogether() {
+        String word = BOLD_A + BOLD_A + BOLD_A + BOLD_A + BOLD_A;
+        assertEquals(BOLD_A + "\n" + BOLD_A + "\n" + BOLD_A + "\n" + BOLD_A + "\n" + BOLD_A,
+                WordWrap.from(word).maxWidth(3).wrap());
+        assertEquals(BOLD_A + "-\n" + BOLD_A + "-\n" + BOLD_A + "-\n" + BOLD_A + BOLD_A,
+                WordWrap.from(word).maxWidth(4).wrap());
+    }
+
+    @Test
+    public void testNonLetterSupplementaryBreaksBetweenPairs() {
+        assertEquals("hi\n" + EMOJI + EMOJI + "\n" + EMOJI + "\nthe-\nre",
+                WordWrap.from("hi " + EMOJI + EMOJI + EMOJI + " there").maxWidth(4).wrap());
+    }
+
+    @Test
+    public void testLoneSurrogatesPassThrough() {
+        assertEquals("a\uD800b", WordWrap.from("a\uD800b").wrap());
+        assertEquals("\uDC00a", WordWrap.from("\uDC00a").wrap());
+        assertEquals("ab\uD800", WordWrap.from("ab\uD800").wrap());
+        assertEquals("\uD800\n\uD800", WordWrap.from("\uD800\n\uD800").wrap());
+    }
+
+    @Test
+    public void testHighSurrogateAtEndOfChunk() {
+        List<String> lines = new ArrayList<>();
+        StringBuilder b = new StringBuilder();
+        WrapSession session = WordWrap.configure().maxWidth(3).build()
+                .session(new LineConsumer() {
+
+                    @Override
+                    public void write(char[] chars, int offset, int length) {
+                        b.append(chars, offset, length);
+                    }
+
+                    @Override
+                    public void writeNewLine() {
+                        lines.add(b.toString());
+                        b.setLength(0);
+                    }
+                });
+        String text = "a" + BOLD_A + BOLD_A + "b";
+        for (int i = 0; i < text.length(); i++) {
+            session.feed(text.substring(i, i + 1));
+        }
+        session.finish();
+        lines.add(b.toString());
+        assertEquals(String.join("\n", lines),
+                WordWrap.configure().maxWidth(3).build().wrap(text));
+        for (String line : lines) {
+            assertNoSplitPair(line);
+        }
+    }
+
+    @Test
+    public void testRandomTextNeverSplitsPairs() {
+        Random r = new Random(7);
+        String[] alphabet = { "a", "b", " ", ",", "-", "\n", BOLD_A, EMOJI, "一" };
+        for (int n = 0; n < 3000; n++) {
+            StringBuilder b = new StringBuilder();
+            int count = r.nextInt(40);
+            for (int i = 0; i < count; i++) {
+                b.append(alphabet[r.nextInt(alphabet.length)]);
+            }
+            String text = b.toString();
+            Wrapper w = WordWrap.configure() //
+                    .maxWidth(2 + r.nextInt(10)) //
+                    .breakWords(r.nextBoolean()) //
+                    .insertHyphens(r.nextBoolean()) //
+                    .optimalFit(r.nextInt(4) == 0) //
+                    .build();
+            String wrapped = w.wrap(text);
+            assertNoSplitPair(wrapped);
+            for (String line : wrapped.split("\n")) {
+                assertNoSplitPair(line);
+            }
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            w.wrapUtf8(bytes, 0, bytes.length, out);
+            assertEquals(text, wrapped, new String(out.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void assertNoSplitPair(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (Character.isHighSurrogate(ch)) {
+                assertFalse(s, i + 1 == s.length() || !Character.isLowSurrogate(s.charAt(i + 1)));
+                i++;
+            } else {
+                assertFalse(s, Character.isLowSurrogate(ch));
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.davidmoten.text.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates the range tables of {@link DisplayWidth} from Unicode Character
+ * Database files. Run {@link #main(String[])} and paste its output over the
+ * tables in {@code DisplayWidth.java} when moving to a new Unicode version
+ * (update {@link #VERSION}, the files in {@code src/test/resources/ucd} and the
+ * class javadoc of {@code DisplayWidth} with it). {@code UnicodeWidthTablesTest}
+ * fails if the tables in the source differ from what this generates.
+ */
+final class UnicodeWidthTables {
+
+    static final String VERSION = "14.0.0";
+
+    static final Path EAST_ASIAN_WIDTH = Paths
+            .get("src/test/resources/ucd/EastAsianWidth-" + VERSION + ".txt");
+
+    static final Path GENERAL_CATEGORY = Paths
+            .get("src/test/resources/ucd/DerivedGeneralCategory-" + VERSION + ".txt");
+
+    private static final int CODE_POINTS = Character.MAX_CODE_POINT + 1;
+
+    private static final String MISSING = "# @missing:";
+
+    private UnicodeWidthTables() {
+        // prevent instantiation
+    }
+
+    public static void main(String[] args) {
+        System.out.println(javaSource("WIDE", wide()));
+        System.out.println(javaSource("ZERO", zero()));
+    }
+
+    /**
+     * Returns the inclusive ranges of code points that are East Asian Wide (W)
+     * or Fullwidth (F).
+     */
+    static int[] wide() {
+        return ranges(read(EAST_ASIAN_WIDTH), new HashSet<>(Arrays.asList("W", "F")));
+    }
+
+    /**
+     * Returns the inclusive ranges of code points with general category Mn, Me,
+     * Cf, Cc or Cs except U+00AD (the soft hyphen is shown as a hyphen when a
+     * line is broken at it).
+     */
+    static int[] zero() {
+        String[] categories = read(GENERAL_CATEGORY);
+        categories[0xAD] = null;
+        return ranges(categories, new HashSet<>(Arrays.asList("Mn", "Me", "Cf", "Cc", "Cs")));
+    }
+
+    /**
+     * Returns the declaration of the table as it appears in
+     * {@code DisplayWidth.java}.
+     */
+    static String javaSource(String name, int[] ranges) {
+        StringBuilder s = new StringBuilder();
+        s.append("    static final int[] ").append(name).append(" = { //");
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < ranges.length; i += 2) {
+            String pair = hex(ranges[i]) + ", " + hex(ranges[i + 1]);
+            if (line.length() > 0 && line.length() + 2 + pair.length() > 80) {
+                s.append("\n            ").append(line).append(", //");
+                line.setLength(0);
+            }
+            if (line.length() > 0) {
+                line.append(", ");
+            }
+            line.append(pair);
+        }
+        return s.append("\n            ").append(line).append(" };").toString();
+    }
+
+    private static String hex(int codePoint) {
+        return String.format("0x%04X", codePoint);
+    }
+
+    /**
+     * Returns the property value of every code point from a UCD file of lines
+     * like {@code 3400..4DBF ; W # comment}. The {@code @missing} lines give the
+     * value of code points not listed, later lines overriding earlier ones.
+     */
+    private static String[] read(Path file) {
+        String[] values = new String[CODE_POINTS];
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(MISSING)) {
+                    line = line.substring(MISSING.length());
+                }
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                if (!line.trim().isEmpty()) {
+                    String[] fields = line.split(";");
+                    String[] range = fields[0].trim().split("\\.\\.");
+                    int from = Integer.parseInt(range[0], 16);
+                    int to = range.length == 1 ? from : Integer.parseInt(range[1], 16);
+                    Arrays.fill(values, from, to + 1, fields[1].trim());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return values;
+    }
+
+    private static int[] ranges(String[] values, Set<String> selected) {
+        List<Integer> ranges = new ArrayList<>();
+        for (int cp = 0; cp < CODE_POINTS; cp++) {
+            if (selected.contains(values[cp])) {
+                int last = ranges.size() - 1;
+                if (last > 0 && ranges.get(last) == cp - 1) {
+                    ranges.set(last, cp);
+                } else {
+                    ranges.add(cp);
+                    ranges.add(cp);
+                }
+            }
+        }
+        return ranges.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+}
@@ -0,0 +1,37 @@
+package org.davidmoten.text.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+public class UnicodeWidthTablesTest {
+
+    @Test
+    public void testWideTableGeneratedFromUnicodeData() {
+        assertArrayEquals(UnicodeWidthTables.wide(), DisplayWidth.WIDE);
+    }
+
+    @Test
+    public void testZeroTableGeneratedFromUnicodeData() {
+        assertArrayEquals(UnicodeWidthTables.zero(), DisplayWidth.ZERO);
+    }
+
+    @Test
+    public void testSourceIsGeneratorOutput() throws IOException {
+        String source = new String(Files.readAllBytes(
+                Paths.get("src/main/java/org/davidmoten/text/utils/DisplayWidth.java")),
+                StandardCharsets.UTF_8);
+        assertTrue(source.contains(UnicodeWidthTables.javaSource("WIDE", UnicodeWidthTables.wide())));
+        assertTrue(source.contains(UnicodeWidthTables.javaSource("ZERO", UnicodeWidthTables.zero())));
+        String version = UnicodeWidthTables.VERSION.substring(0,
+                UnicodeWidthTables.VERSION.lastIndexOf('.'));
+        assertTrue(source.contains("Unicode Character Database " + version));
+    }
+
+}
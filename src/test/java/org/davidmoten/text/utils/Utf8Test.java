@@ -0,0 +1,113 @@
+package org.davidmoten.text.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class Utf8Test {
+
+    @Test
+    public void testSameAsCharWrappingOnNovels() throws IOException {
+        for (String name : new String[] { "treasure-island-fragment.txt", "the-black-gang.txt",
+                "the-importance-of-being-earnest.txt" }) {
+            byte[] bytes = Files.readAllBytes(new File("src/test/resources/" + name).toPath());
+            for (int width : new int[] { 5, 20, 80 }) {
+                Wrapper w = WordWrap.configure().maxWidth(width).newLine("\r\n").build();
+                checkSameAsCharWrapping(w, bytes);
+            }
+        }
+    }
+
+    @Test
+    public void testSameAsCharWrappingOnRandomText() {
+        Random r = new Random(3);
+        String[] alphabet = { "a", "b", "c", " ", " ", ",", ".", "-", "(", "\n", "\r", "1", "\t",
+                "é", "中", "—", "😀", "𝐀" };
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder b = new StringBuilder();
+            int n = r.nextInt(60);
+            for (int j = 0; j < n; j++) {
+                b.append(alphabet[r.nextInt(alphabet.length)]);
+            }
+            Wrapper w = WordWrap.configure() //
+                    .maxWidth(1 + r.nextInt(12)) //
+                    .breakWords(r.nextBoolean()) //
+                    .insertHyphens(r.nextBoolean()) //
+                    .build();
+            checkSameAsCharWrapping(w, b.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testSupplementaryCharacterNotSplitByWordBreak() {
+        Wrapper w = WordWrap.configure().maxWidth(3).insertHyphens(false).build();
+        // 𝐀 is a letter so the pair is part of the word but is never split
+        String text = "ab𝐀cd";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        assertEquals("ab\n𝐀c\nd", new String(wrapUtf8(w, bytes), StandardCharsets.UTF_8));
+        checkSameAsCharWrapping(w, bytes);
+    }
+
+    @Test
+    public void testMalformedBytesAreReplaced() {
+        byte[] bytes = { 'a', (byte) 0xFF, 'b', ' ', (byte) 0xE4, (byte) 0xB8, ' ', (byte) 0xC0,
+                (byte) 0x80 };
+        assertEquals("a�b �� ��", new String(
+                wrapUtf8(WordWrap.configure().build(), bytes), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSlice() {
+        byte[] bytes = "xxété thereé".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WordWrap.configure().maxWidth(5).build().wrapUtf8(bytes, 2, bytes.length - 4, out);
+        assertEquals("été\nthere", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSliceOutOfBounds() {
+        WordWrap.configure().build().wrapUtf8(new byte[3], 2, 2, new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void testByteBuffers() {
+        Wrapper w = WordWrap.configure().maxWidth(6).build();
+        byte[] bytes = "hello thére".getBytes(StandardCharsets.UTF_8);
+        byte[] expected = "hello\nthére".getBytes(StandardCharsets.UTF_8);
+        for (ByteBuffer in : new ByteBuffer[] { ByteBuffer.wrap(bytes),
+                ByteBuffer.allocateDirect(bytes.length).put(bytes) }) {
+            in.rewind();
+            ByteBuffer out = ByteBuffer.allocate(100);
+            w.wrapUtf8(in, out);
+            assertEquals(in.limit(), in.position());
+            assertArrayEquals(expected, Arrays.copyOf(out.array(), out.position()));
+        }
+    }
+
+    private static void checkSameAsCharWrapping(Wrapper w, byte[] bytes) {
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        byte[] expected = w.wrap(text).getBytes(StandardCharsets.UTF_8);
+        byte[] actual = wrapUtf8(w, bytes);
+        if (!Arrays.equals(expected, actual)) {
+            assertEquals(text, new String(expected, StandardCharsets.UTF_8),
+                    new String(actual, StandardCharsets.UTF_8));
+            assertArrayEquals(text, expected, actual);
+        }
+    }
+
+    private static byte[] wrapUtf8(Wrapper w, byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        w.wrapUtf8(bytes, 0, bytes.length, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,168 @@
+package org.davidmoten.text.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+public class WidthCacheTest {
+
+    private static final Function<CharSequence, Number> WIDTH = s -> {
+        double w = 0;
+        for (int i = 0; i < s.length(); i++) {
+            w += Character.isUpperCase(s.charAt(i)) ? 1.5 : 1;
+        }
+        return w;
+    };
+
+    @Test
+    public void testSameOutputAsUncachedAndCountsHits() throws IOException {
+        String text = novel();
+        AtomicLong calls = new AtomicLong();
+        Function<CharSequence, Number> counting = s -> {
+            calls.incrementAndGet();
+            return WIDTH.apply(s);
+        };
+        // no word is broken so every measurement is of a word or separator
+        Wrapper uncached = WordWrap.configure().maxWidth(30).stringWidth(WIDTH)
+                .optimalFit(true).breakWords(false).build();
+        Wrapper cached = WordWrap.configure().maxWidth(30).stringWidth(counting)
+                .optimalFit(true).breakWords(false).cacheWidths(1 << 17).build();
+        assertEquals(uncached.wrap(text), cached.wrap(text));
+        WidthCache cache = cached.widthCache().get();
+        assertEquals(calls.get(), cache.misses());
+        // words repeat within a single text
+        assertTrue(cache.hits() + " " + cache.misses(), cache.hits() > 2 * cache.misses());
+        long hits = cache.hits();
+        long misses = cache.misses();
+        // nearly everything is cached the second time round (a few entries are
+        // lost to collisions within a set)
+        assertEquals(uncached.wrap(text), cached.wrap(text));
+        assertTrue(cache.misses() - misses < (cache.hits() - hits) / 10);
+    }
+
+    @Test
+    public void testTinyCacheStillCorrect() throws IOException {
+        String text = novel();
+        Wrapper uncached = WordWrap.configure().maxWidth(20).stringWidth(WIDTH).optimalFit(true)
+                .build();
+        Wrapper cached = WordWrap.configure().maxWidth(20).stringWidth(WIDTH).optimalFit(true)
+                .cacheWidths(1).build();
+        assertEquals(4, cached.widthCache().get().capacity());
+        assertEquals(uncached.wrap(text), cached.wrap(text));
+    }
+
+    @Test
+    public void testWidthFunctionCached() {
+        AtomicLong calls = new AtomicLong();
+        Wrapper w = WordWrap.configure().maxWidth(5) //
+                .widthFunction((chars, start, end) -> {
+                    calls.incrementAndGet();
+                    return end - start;
+                }) //
+                .optimalFit(true) //
+                .cacheWidths(100) //
+                .build();
+        assertEquals("hello\nthere", w.wrap("hello there"));
+        long n = calls.get();
+        assertEquals("hello\nthere", w.wrap("hello there"));
+        assertEquals(n, calls.get());
+    }
+
+    @Test
+    public void testEvictionKeepsRecentlyHitEntries() {
+        WidthCache cache = new WidthCache(4);
+        WidthFunction measure = (chars, start, end) -> end - start;
+        char[][] keys = new char[8][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = ("k" + i).toCharArray();
+        }
+        for (int i = 0; i < 4; i++) {
+            cache.width(keys[i], 0, 2, measure);
+        }
+        // mark k0 as recently used
+        cache.width(keys[0], 0, 2, measure);
+        assertEquals(1, cache.hits());
+        cache.width(keys[4], 0, 2, measure);
+        cache.width(keys[0], 0, 2, measure);
+        assertEquals(2, cache.hits());
+        assertEquals(5, cache.misses());
+    }
+
+    @Test
+    public void testClear() {
+        WidthCache cache = new WidthCache(16);
+        WidthFunction measure = (chars, start, end) -> end - start;
+        char[] chars = "abc".toCharArray();
+        cache.width(chars, 0, 3, measure);
+        cache.width(chars, 0, 3, measure);
+        cache.clear();
+        assertEquals(0, cache.hits());
+        assertEquals(0, cache.misses());
+        cache.width(chars, 0, 3, measure);
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void testRangesWithSameContentShareEntry() {
+        WidthCache cache = new WidthCache(16);
+        WidthFunction measure = (chars, start, end) -> end - start;
+        assertEquals(2.0, cache.width("xaby".toCharArray(), 1, 3, measure), 0);
+        assertEquals(2.0, cache.width("ab".toCharArray(), 0, 2, measure), 0);
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    public void testNoCacheByDefaultOrWithModelOrGreedy() {
+        assertFalse(WordWrap.configure().optimalFit(true).build().widthCache().isPresent());
+        assertFalse(WordWrap.configure().optimalFit(true).cacheWidths(10)
+                .charWidthModel(ch -> 1).build().widthCache().isPresent());
+        assertFalse(WordWrap.configure().cacheWidths(10).build().widthCache().isPresent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeSize() {
+        WordWrap.configure().cacheWidths(-1);
+    }
+
+    @Test
+    public void testConcurrentUseOfSharedWrapper() throws Exception {
+        String text = novel();
+        Wrapper uncached = WordWrap.configure().maxWidth(25).stringWidth(WIDTH).optimalFit(true)
+                .build();
+        String expected = uncached.wrap(text);
+        Wrapper cached = WordWrap.configure().maxWidth(25).stringWidth(WIDTH).optimalFit(true)
+                .cacheWidths(64).build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> cached.wrap(text)));
+            }
+            for (Future<String> f : futures) {
+                assertEquals(expected, f.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String novel() throws IOException {
+        return new String(Files.readAllBytes(
+                new File("src/test/resources/treasure-island-fragment.txt").toPath()),
+                StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,55 @@
+package org.davidmoten.text.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.function.Function;
+
+import org.junit.Test;
+
+public class WidthFunctionTest {
+
+    private static final WidthFunction DOUBLE_M = (chars, start, end) -> {
+        double w = 0;
+        for (int i = start; i < end; i++) {
+            w += chars[i] == 'm' ? 2 : 1;
+        }
+        return w;
+    };
+
+    private static final Function<CharSequence, Number> DOUBLE_M_STRING = s -> {
+        char[] chars = s.toString().toCharArray();
+        return DOUBLE_M.width(chars, 0, chars.length);
+    };
+
+    @Test
+    public void testCharCount() {
+        assertEquals(3, WidthFunction.CHAR_COUNT.width("abcde".toCharArray(), 1, 4), 0.00001);
+    }
+
+    @Test
+    public void testWrapUsesWidthFunction() {
+        assertEquals("am-\nma",
+                WordWrap.from("amma").maxWidth(5).widthFunction(DOUBLE_M).wrap());
+    }
+
+    @Test
+    public void testSameAsStringWidthOnNovels() {
+        String[] resources = { "/treasure-island-fragment.txt", "/the-black-gang.txt",
+                "/the-importance-of-being-earnest.txt" };
+        for (String resource : resources) {
+            for (int width : new int[] { 5, 20, 80 }) {
+                assertEquals(
+                        WordWrap.fromClasspathUtf8(resource).maxWidth(width)
+                                .stringWidth(DOUBLE_M_STRING).wrap(),
+                        WordWrap.fromClasspathUtf8(resource).maxWidth(width)
+                                .widthFunction(DOUBLE_M).wrap());
+            }
+        }
+    }
+
+    @Test
+    public void testStringWidthReplacesWidthFunction() {
+        assertEquals("amma", WordWrap.configure().maxWidth(4).widthFunction(DOUBLE_M)
+                .stringWidth(s -> s.length()).build().wrap("amma"));
+    }
+}
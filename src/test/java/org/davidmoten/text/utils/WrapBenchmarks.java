@@ -0,0 +1,361 @@
+package org.davidmoten.text.utils;
+
+import java.io.CharArrayWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parameterized benchmarks across the configuration space of the wrapping
+ * engine. Each nested state varies one dimension (or a few related ones) so
+ * the number of combinations stays manageable. Run with the GC profiler
+ * ({@code -prof gc}, as the {@code benchmark} profile does) to see allocation
+ * per operation alongside throughput.
+ */
+public class WrapBenchmarks {
+
+    static final String[] NOVELS = { "treasure-island-fragment.txt", "the-black-gang.txt",
+            "the-importance-of-being-earnest.txt" };
+
+    // proportional widths roughly like a sans serif font
+    static final CharWidthModel PROPORTIONAL = ch -> ch == 'm' || ch == 'w' || ch == 'M'
+            || ch == 'W' ? 1.5 : ch == 'i' || ch == 'l' || ch == ' ' || ch == '.' ? 0.5 : 1;
+
+    static final Function<CharSequence, Number> PROPORTIONAL_STRING_WIDTH = PROPORTIONAL::width;
+
+    static final WidthFunction PROPORTIONAL_WIDTH_FUNCTION = (chars, start, end) -> {
+        double w = 0;
+        for (int i = start; i < end; i++) {
+            w += PROPORTIONAL.width(chars[i]);
+        }
+        return w;
+    };
+
+    @State(Scope.Benchmark)
+    public static class NovelState {
+
+        @Param({ "treasure-island-fragment.txt", "the-black-gang.txt",
+                "the-importance-of-being-earnest.txt" })
+        public String novel;
+
+        @Param({ "10", "20", "80", "200" })
+        public int width;
+
+        String text;
+        Wrapper wrapper;
+        Wrapper optimal;
+        final CharArrayWriter writer = new CharArrayWriter(1 << 20);
+        final CountingLineConsumer consumer = new CountingLineConsumer();
+
+        @Setup
+        public void setup() {
+            text = read(novel);
+            wrapper = WordWrap.configure().maxWidth(width).build();
+            optimal = WordWrap.configure().maxWidth(width).optimalFit(true).build();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class OptionsState {
+
+        @Param({ "true", "false" })
+        public boolean breakWords;
+
+        @Param({ "true", "false" })
+        public boolean insertHyphens;
+
+        @Param({ "5", "20" })
+        public int width;
+
+        String text;
+        Wrapper wrapper;
+        final CountingLineConsumer consumer = new CountingLineConsumer();
+
+        @Setup
+        public void setup() {
+            text = read(NOVELS[0]);
+            wrapper = WordWrap.configure() //
+                    .maxWidth(width) //
+                    .breakWords(breakWords) //
+                    .insertHyphens(insertHyphens) //
+                    .build();
+        }
+    }
+
+    public enum WidthMethod {
+        CHAR_COUNT, STRING_WIDTH, WIDTH_FUNCTION, CHAR_WIDTH_MODEL, CHAR_WIDTH_TABLE,
+        DISPLAY_WIDTH;
+
+        Wrapper.Builder configure(Wrapper.Builder b) {
+            switch (this) {
+            case STRING_WIDTH:
+                return b.stringWidth(PROPORTIONAL_STRING_WIDTH);
+            case WIDTH_FUNCTION:
+                return b.widthFunction(PROPORTIONAL_WIDTH_FUNCTION);
+            case CHAR_WIDTH_MODEL:
+                return b.charWidthModel(PROPORTIONAL);
+            case CHAR_WIDTH_TABLE:
+                return b.charWidthModel(
+                        CharWidthTable.sample(PROPORTIONAL_STRING_WIDTH, ' ', '~'));
+            case DISPLAY_WIDTH:
+                return b.charWidthModel(DisplayWidth.instance());
+            default:
+                return b;
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class WidthMethodState {
+
+        @Param
+        public WidthMethod method;
+
+        @Param({ "20", "80" })
+        public int width;
+
+        String text;
+        Wrapper wrapper;
+        final CountingLineConsumer consumer = new CountingLineConsumer();
+
+        @Setup
+        public void setup() {
+            text = read(NOVELS[0]);
+            wrapper = method.configure(WordWrap.configure().maxWidth(width)).build();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ColdCacheState {
+
+        // 0 for no cache
+        @Param({ "0", "1024", "65536" })
+        public int cacheSize;
+
+        String text;
+        Wrapper.Builder builder;
+        final CountingLineConsumer consumer = new CountingLineConsumer();
+
+        @Setup
+        public void setup() {
+            text = read(NOVELS[1]);
+            builder = WordWrap.configure() //
+                    .maxWidth(80) //
+                    .stringWidth(PROPORTIONAL_STRING_WIDTH) //
+                    .optimalFit(true) //
+                    .cacheWidths(cacheSize);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ShortStringsState {
+
+        @Param({ "10", "20", "80" })
+        public int width;
+
+        List<String> strings;
+        Wrapper wrapper;
+
+        @Setup
+        public void setup() {
+            // sentences are like table cells or labels
+            strings = Arrays.asList(read(NOVELS[0]).split("(?<=\\.) "));
+            wrapper = WordWrap.configure().maxWidth(width).build();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class LongTokenState {
+
+        @Param({ "100", "10000" })
+        public int tokenLength;
+
+        @Param({ "true", "false" })
+        public boolean breakWords;
+
+        String text;
+        Wrapper wrapper;
+        final CountingLineConsumer consumer = new CountingLineConsumer();
+
+        @Setup
+        public void setup() {
+            // urls, base64 and the like
+            StringBuilder b = new StringBuilder();
+            for (int i = 0; i < 4; i++) {
+                b.append("see ");
+                for (int j = 0; j < tokenLength; j++) {
+                    b.append((char) ('a' + j % 26));
+                }
+                b.append(" here. ");
+            }
+            text = b.toString();
+            wrapper = WordWrap.configure().maxWidth(40).breakWords(breakWords).build();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class MeasuredLongTokenState {
+
+        @Param({ "100", "10000" })
+        public int tokenLength;
+
+        @Param({ "false", "true" })
+        public boolean monotoneWidth;
+
+        String text;
+        Wrapper wrapper;
+        final CountingLineConsumer consumer = new CountingLineConsumer();
+
+        @Setup
+        public void setup() {
+            LongTokenState s = new LongTokenState();
+            s.tokenLength = tokenLength;
+            s.setup();
+            text = s.text;
+            // every width check measures the whole line as a font would
+            wrapper = WordWrap.configure() //
+                    .maxWidth(40) //
+                    .stringWidth(PROPORTIONAL_STRING_WIDTH) //
+                    .monotoneWidth(monotoneWidth) //
+                    .build();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class UnbreakableTokenState {
+
+        // ops/s should fall in proportion to the token length (linear time)
+        @Param({ "100000", "1000000", "4000000" })
+        public int tokenLength;
+
+        String text;
+        Wrapper wrapper;
+        final CountingLineConsumer consumer = new CountingLineConsumer();
+
+        @Setup
+        public void setup() {
+            // a base64 attachment or a minified json line
+            StringBuilder b = new StringBuilder("data: ");
+            for (int i = 0; i < tokenLength; i++) {
+                b.append((char) ('a' + i % 26));
+            }
+            b.append(" end");
+            text = b.toString();
+            wrapper = WordWrap.configure() //
+                    .maxWidth(80) //
+                    .breakWords(false) //
+                    .stringWidth(PROPORTIONAL_STRING_WIDTH) //
+                    .build();
+        }
+    }
+
+    @Benchmark
+    public List<String> novelToList(NovelState s) {
+        return s.wrapper.wrapToList(s.text);
+    }
+
+    @Benchmark
+    public int novelToWriter(NovelState s) {
+        s.writer.reset();
+        s.wrapper.wrap(s.text, s.writer);
+        return s.writer.size();
+    }
+
+    @Benchmark
+    public long novelToLineConsumer(NovelState s) {
+        s.wrapper.wrap(s.text, s.consumer);
+        return s.consumer.chars;
+    }
+
+    @Benchmark
+    public long novelOptimalFit(NovelState s) {
+        s.optimal.wrap(s.text, s.consumer);
+        return s.consumer.chars;
+    }
+
+    @Benchmark
+    public long options(OptionsState s) {
+        s.wrapper.wrap(s.text, s.consumer);
+        return s.consumer.chars;
+    }
+
+    @Benchmark
+    public long widthMethod(WidthMethodState s) {
+        s.wrapper.wrap(s.text, s.consumer);
+        return s.consumer.chars;
+    }
+
+    @Benchmark
+    public int shortStrings(ShortStringsState s) {
+        int n = 0;
+        for (String text : s.strings) {
+            n += s.wrapper.wrap(text).length();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public WrappedBatch shortStringsBatch(ShortStringsState s) {
+        return s.wrapper.wrapAll(s.strings);
+    }
+
+    @Benchmark
+    public long longTokens(LongTokenState s) {
+        s.wrapper.wrap(s.text, s.consumer);
+        return s.consumer.chars;
+    }
+
+    @Benchmark
+    public long longTokensMeasured(MeasuredLongTokenState s) {
+        s.wrapper.wrap(s.text, s.consumer);
+        return s.consumer.chars;
+    }
+
+    @Benchmark
+    public long unbreakableToken(UnbreakableTokenState s) {
+        s.wrapper.wrap(s.text, s.consumer);
+        return s.consumer.chars;
+    }
+
+    @Benchmark
+    public long coldCache(ColdCacheState s) {
+        // a new wrapper per document so nothing is re-wrapped from a warm cache
+        s.builder.build().wrap(s.text, s.consumer);
+        return s.consumer.chars;
+    }
+
+    static String read(String resource) {
+        try {
+            return new String(
+                    Files.readAllBytes(new File("src/test/resources/" + resource).toPath()),
+                    StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static final class CountingLineConsumer implements LineConsumer {
+
+        long chars;
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            this.chars += length;
+        }
+
+        @Override
+        public void writeNewLine() {
+            chars++;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.davidmoten.text.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class WrapSessionTest {
+
+    @Test
+    public void testLinesAreWrittenBeforeFinish() {
+        List<String> lines = new ArrayList<>();
+        ListConsumer consumer = new ListConsumer(lines);
+        WrapSession session = WordWrap.configure().maxWidth(6).build().session(consumer);
+        session.feed("hello th");
+        assertEquals(Arrays.asList("hello"), lines);
+        session.feed("ere\nhow");
+        assertEquals(Arrays.asList("hello", "there"), lines);
+        assertEquals("", consumer.pending());
+        session.finish();
+        assertEquals("how", consumer.pending());
+    }
+
+    @Test
+    public void testRandomChunksSameAsWrap() throws IOException {
+        String text = new String(Files.readAllBytes(
+                new File("src/test/resources/the-importance-of-being-earnest.txt").toPath()),
+                StandardCharsets.UTF_8);
+        Random r = new Random(2);
+        for (int width : new int[] { 5, 20, 80 }) {
+            Wrapper w = WordWrap.configure().maxWidth(width).build();
+            StringBuilder b = new StringBuilder();
+            WrapSession session = w.session(new LineConsumer() {
+
+                @Override
+                public void write(char[] chars, int offset, int length) {
+                    b.append(chars, offset, length);
+                }
+
+                @Override
+                public void writeNewLine() {
+                    b.append('\n');
+                }
+            });
+            int i = 0;
+            while (i < text.length()) {
+                int n = Math.min(text.length() - i, r.nextInt(50));
+                if (r.nextBoolean()) {
+                    session.feed(text.subSequence(i, i + n));
+                } else {
+                    char[] chars = new char[n + 4];
+                    text.getChars(i, i + n, chars, 2);
+                    session.feed(chars, 2, n);
+                }
+                i += n;
+            }
+            session.finish();
+            assertEquals(w.wrap(text), b.toString());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFeedAfterFinish() {
+        WrapSession session = WordWrap.configure().build()
+                .session(new ListConsumer(new ArrayList<>()));
+        session.finish();
+        session.feed("hi");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFinishTwice() {
+        WrapSession session = WordWrap.configure().build()
+                .session(new ListConsumer(new ArrayList<>()));
+        session.finish();
+        session.finish();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFeedOutOfBounds() {
+        WordWrap.configure().build().session(new ListConsumer(new ArrayList<>()))
+                .feed(new char[2], 1, 2);
+    }
+
+    private static final class ListConsumer implements LineConsumer {
+
+        private final List<String> lines;
+        private final StringBuilder b = new StringBuilder();
+
+        ListConsumer(List<String> lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            b.append(chars, offset, length);
+        }
+
+        String pending() {
+            return b.toString();
+        }
+
+        @Override
+        public void writeNewLine() {
+            lines.add(b.toString());
+            b.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.davidmoten.text.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class WrapStatsTest {
+
+    @Test
+    public void testCounts() {
+        List<WrapStats> list = new ArrayList<>();
+        String text = "hello there\nabcdefgh";
+        Wrapper w = WordWrap.configure().maxWidth(6).listener(list::add).build();
+        assertEquals("hello\nthere\nabcde-\nfgh", w.wrap(text));
+        assertEquals(1, list.size());
+        WrapStats stats = list.get(0);
+        assertEquals(text.length(), stats.chars());
+        assertEquals(4, stats.lines());
+        assertEquals(1, stats.brokenWords());
+        assertEquals(1, stats.hyphens());
+        // the default width function is measured too
+        assertTrue(stats.widthCalls() > 0);
+    }
+
+    @Test
+    public void testNoWidthCallsWithModel() {
+        List<WrapStats> list = new ArrayList<>();
+        WordWrap.from("hello there").maxWidth(6).charWidthModel(ch -> 1).listener(list::add)
+                .wrap();
+        assertEquals(0, list.get(0).widthCalls());
+        assertEquals(0, list.get(0).widthNanos());
+        assertEquals(2, list.get(0).lines());
+    }
+
+    @Test
+    public void testBrokenWordsWithoutHyphens() {
+        List<WrapStats> list = new ArrayList<>();
+        WordWrap.from("abcdefgh").maxWidth(3).insertHyphens(false).listener(list::add).wrap();
+        assertEquals(2, list.get(0).brokenWords());
+        assertEquals(0, list.get(0).hyphens());
+        assertEquals(3, list.get(0).lines());
+    }
+
+    @Test
+    public void testWidthCallsCountedAndTimed() {
+        List<WrapStats> list = new ArrayList<>();
+        int[] calls = new int[1];
+        Wrapper w = WordWrap.configure() //
+                .maxWidth(6) //
+                .stringWidth(s -> {
+                    calls[0]++;
+                    return s.length();
+                }) //
+                .listener(list::add) //
+                .build();
+        w.wrap("hello there");
+        assertEquals(calls[0], list.get(0).widthCalls());
+        assertTrue(list.get(0).widthCalls() > 0);
+        assertTrue(list.get(0).widthNanos() > 0);
+    }
+
+    @Test
+    public void testOptimalFitMeasuresHyphenOnlyWhenBreakingWords() {
+        List<WrapStats> list = new ArrayList<>();
+        List<String> measured = new ArrayList<>();
+        Wrapper w = WordWrap.configure() //
+                .maxWidth(6) //
+                .optimalFit(true) //
+                .stringWidth(s -> {
+                    measured.add(s.toString());
+                    return s.length();
+                }) //
+                .listener(list::add) //
+                .build();
+        assertEquals("hello\nthere", w.wrap("hello there"));
+        assertTrue(measured.toString(), !measured.contains("-"));
+        assertEquals(measured.size(), list.get(0).widthCalls());
+        assertEquals("abcde-\nfgh", w.wrap("abcdefgh"));
+        assertTrue(measured.contains("-"));
+    }
+
+    @Test
+    public void testCacheHitsAreNotCounted() {
+        WrapStatsCollector collector = new WrapStatsCollector();
+        Wrapper w = WordWrap.configure() //
+                .maxWidth(6) //
+                .widthFunction((chars, start, end) -> end - start) //
+                .optimalFit(true) //
+                .cacheWidths(1000) //
+                .listener(collector) //
+                .build();
+        w.wrap("hello there");
+        long calls = collector.total().widthCalls();
+        w.wrap("hello there");
+        assertEquals(calls, collector.total().widthCalls());
+        assertEquals(calls, w.widthCache().get().misses());
+        assertEquals(2, collector.wraps());
+    }
+
+    @Test
+    public void testEachItemOfBatchReportedAndCountersReset() {
+        WrapStatsCollector collector = new WrapStatsCollector();
+        Wrapper w = WordWrap.configure().maxWidth(6).listener(collector).build();
+        w.wrapAll(Arrays.asList("hello there", "abc", ""));
+        assertEquals(3, collector.wraps());
+        assertEquals(14, collector.total().chars());
+        assertEquals(3, collector.total().lines());
+        collector.reset();
+        assertEquals(0, collector.wraps());
+        assertEquals(0, collector.total().lines());
+    }
+
+    @Test
+    public void testPlus() {
+        WrapStats a = new WrapStats(1, 2, 3, 4, 5, 6);
+        WrapStats b = a.plus(a);
+        assertEquals(2, b.chars());
+        assertEquals(4, b.lines());
+        assertEquals(6, b.brokenWords());
+        assertEquals(8, b.hyphens());
+        assertEquals(10, b.widthCalls());
+        assertEquals(12, b.widthNanos());
+        assertEquals("WrapStats[chars=2, lines=4, brokenWords=6, hyphens=8, widthCalls=10, widthNanos=12]",
+                b.toString());
+    }
+}
@@ -0,0 +1,100 @@
+package org.davidmoten.text.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class WrappedBatchTest {
+
+    @Test
+    public void testSameAsWrapToList() {
+        Random r = new Random(11);
+        String alphabet = "abcde   ,.;'\n\r-(?!09\t\"";
+        for (int k = 0; k < 50; k++) {
+            List<String> texts = new ArrayList<>();
+            int items = r.nextInt(100);
+            for (int i = 0; i < items; i++) {
+                StringBuilder b = new StringBuilder();
+                int n = r.nextInt(60);
+                for (int j = 0; j < n; j++) {
+                    b.append(alphabet.charAt(r.nextInt(alphabet.length())));
+                }
+                texts.add(b.toString());
+            }
+            Wrapper w = WordWrap.configure() //
+                    .maxWidth(1 + r.nextInt(12)) //
+                    .breakWords(r.nextBoolean()) //
+                    .insertHyphens(r.nextBoolean()) //
+                    .build();
+            WrappedBatch batch = w.wrapAll(texts);
+            assertEquals(texts.size(), batch.size());
+            for (int i = 0; i < texts.size(); i++) {
+                List<String> expected = w.wrapToList(texts.get(i));
+                assertEquals(expected, batch.lines(i));
+                assertEquals(expected.size(), batch.lineCount(i));
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyItems() {
+        WrappedBatch batch = WordWrap.configure().build()
+                .wrapAll(Arrays.asList("", "\n", "hi", ""));
+        assertEquals(4, batch.size());
+        assertEquals(0, batch.lineCount(0));
+        assertEquals(Arrays.asList(""), batch.lines(1));
+        assertEquals("hi", batch.line(2, 0));
+        assertEquals(0, batch.lineCount(3));
+    }
+
+    @Test
+    public void testEmptyBatch() {
+        assertEquals(0, WordWrap.configure().build().wrapAll(Collections.<String>emptyList())
+                .size());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testItemOutOfBounds() {
+        WordWrap.configure().build().wrapAll(Arrays.asList("hi")).lineCount(1);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testLineOutOfBounds() {
+        WordWrap.configure().build().wrapAll(Arrays.asList("hi", "there")).line(0, 1);
+    }
+
+    @Test
+    public void testWrapAllToConsumers() {
+        List<String> texts = Arrays.asList("hello there", "hellothere", "", "a b");
+        Wrapper w = WordWrap.configure().maxWidth(6).build();
+        List<StringBuilder> outputs = new ArrayList<>();
+        w.wrapAll(texts, i -> {
+            assertEquals(outputs.size(), i);
+            StringBuilder b = new StringBuilder();
+            outputs.add(b);
+            return new LineConsumer() {
+
+                @Override
+                public void write(char[] chars, int offset, int length) throws IOException {
+                    b.append(chars, offset, length);
+                }
+
+                @Override
+                public void writeNewLine() throws IOException {
+                    b.append('\n');
+                }
+            };
+        });
+        assertEquals(texts.size(), outputs.size());
+        for (int i = 0; i < texts.size(); i++) {
+            assertEquals(w.wrap(texts.get(i)), outputs.get(i).toString());
+        }
+    }
+}
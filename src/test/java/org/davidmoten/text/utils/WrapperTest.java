@@ -0,0 +1,353 @@
+package org.davidmoten.text.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class WrapperTest {
+
+    @Test
+    public void testWrapIsReusable() {
+        Wrapper w = WordWrap.configure().maxWidth(6).build();
+        assertEquals("hello\nthere", w.wrap("hello there"));
+        assertEquals("hello-\nthere", w.wrap("hellothere"));
+        assertEquals("hello\nthere", w.wrap("hello there"));
+    }
+
+    @Test
+    public void testSameOutputAsBuilder() {
+        String text = "hi there how are you going? I'm fine thanks, and you";
+        Wrapper w = WordWrap.configure().maxWidth(10).newLine("\r\n").build();
+        assertEquals(WordWrap.from(text).maxWidth(10).newLine("\r\n").wrap(), w.wrap(text));
+    }
+
+    @Test
+    public void testWrapReaderToWriter() {
+        StringWriter out = new StringWriter();
+        WordWrap.configure().maxWidth(6).build().wrap(new StringReader("hello there"), out);
+        assertEquals("hello\nthere", out.toString());
+    }
+
+    @Test
+    public void testWrapReaderThatReturnsSmallChunks() throws IOException {
+        String text = new String(Files.readAllBytes(
+                new File("src/test/resources/the-black-gang.txt").toPath()),
+                StandardCharsets.UTF_8);
+        Wrapper w = WordWrap.configure().maxWidth(20).build();
+        Random r = new Random(1);
+        Reader reader = new Reader() {
+            int pos;
+
+            @Override
+            public int read(char[] cbuf, int off, int len) {
+                if (pos == text.length()) {
+                    return -1;
+                }
+                int n = Math.min(Math.min(len, 1 + r.nextInt(3)), text.length() - pos);
+                text.getChars(pos, pos + n, cbuf, off);
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        StringWriter out = new StringWriter();
+        w.wrap(reader, out);
+        assertEquals(w.wrap(text), out.toString());
+    }
+
+    @Test
+    public void testWrapToLineConsumer() {
+        List<String> list = new ArrayList<>();
+        WordWrap.configure().maxWidth(10).build().wrap("hello there how are you",
+                new LineConsumer() {
+
+                    StringBuilder b = new StringBuilder();
+
+                    @Override
+                    public void write(char[] chars, int offset, int length) throws IOException {
+                        b.append(chars, offset, length);
+                    }
+
+                    @Override
+                    public void writeNewLine() throws IOException {
+                        list.add(b.toString());
+                        b.setLength(0);
+                    }
+                });
+        assertEquals(Arrays.asList("hello", "there how"), list);
+    }
+
+    @Test
+    public void testBrokenWordWrittenFromArraysOnly() {
+        StringBuilder b = new StringBuilder();
+        WordWrap.configure().maxWidth(4).build().wrap("abcdefgh", new LineConsumer() {
+
+            @Override
+            public void write(char[] chars, int offset, int length) throws IOException {
+                b.append(chars, offset, length);
+            }
+
+            @Override
+            public void write(String s) {
+                throw new AssertionError("should not be called");
+            }
+
+            @Override
+            public void writeNewLine() throws IOException {
+                b.append('\n');
+            }
+        });
+        assertEquals("abc-\ndef-\ngh", b.toString());
+    }
+
+    @Test
+    public void testWrapCharArraySlice() {
+        char[] chars = "xxhello therexx".toCharArray();
+        List<String> list = new ArrayList<>();
+        StringBuilder b = new StringBuilder();
+        WordWrap.configure().maxWidth(6).build().wrap(chars, 2, 11, new LineConsumer() {
+
+            @Override
+            public void write(char[] chars, int offset, int length) throws IOException {
+                b.append(chars, offset, length);
+            }
+
+            @Override
+            public void writeNewLine() throws IOException {
+                list.add(b.toString());
+                b.setLength(0);
+            }
+        });
+        list.add(b.toString());
+        assertEquals(Arrays.asList("hello", "there"), list);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrapCharArraySliceOutOfBounds() {
+        WordWrap.configure().build().wrap(new char[3], 2, 2, new LineConsumer() {
+
+            @Override
+            public void write(char[] chars, int offset, int length) throws IOException {
+            }
+
+            @Override
+            public void writeNewLine() throws IOException {
+            }
+        });
+    }
+
+    @Test
+    public void testWrapNonStringCharSequence() {
+        assertEquals("hello\nthere",
+                WordWrap.configure().maxWidth(6).build().wrap(new StringBuilder("hello there")));
+    }
+
+    @Test
+    public void testWrapToList() {
+        assertEquals(Arrays.asList("hello", "there how", "are you"),
+                WordWrap.configure().maxWidth(10).build().wrapToList("hello there how are you"));
+    }
+
+    @Test
+    public void testBuilderChangesAfterBuildDoNotAffectWrapper() {
+        Wrapper.Builder b = WordWrap.configure().maxWidth(12).breakWords(false);
+        Wrapper w = b.build();
+        b.includeExtraWordChars("-");
+        assertEquals("hello super-\ncool", w.wrap("hello super-cool"));
+        assertEquals("hello\nsuper-cool", b.build().wrap("hello super-cool"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxWidthZero() {
+        WordWrap.configure().maxWidth(0);
+    }
+
+    @Test
+    public void testWrapParallelSameAsSequential() throws IOException {
+        for (String name : new String[] { "treasure-island-fragment.txt", "the-black-gang.txt",
+                "the-importance-of-being-earnest.txt" }) {
+            String text = new String(
+                    Files.readAllBytes(new File("src/test/resources/" + name).toPath()),
+                    StandardCharsets.UTF_8);
+            for (int width : new int[] { 5, 20, 80 }) {
+                Wrapper w = WordWrap.configure().maxWidth(width).newLine("\r\n").build();
+                String expected = w.wrap(text);
+                assertEquals(expected, w.wrapParallel(text));
+                ExecutorService executor = Executors.newFixedThreadPool(3);
+                try {
+                    for (int chunkSize : new int[] { 1, 100, 5000 }) {
+                        StringWriter out = new StringWriter();
+                        w.wrapParallel(text, out, executor, chunkSize, 4);
+                        assertEquals(expected, out.toString());
+                    }
+                } finally {
+                    executor.shutdownNow();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWrapParallelEdgeCases() {
+        Wrapper w = WordWrap.configure().maxWidth(6).build();
+        for (String text : new String[] { "", "\n", "\n\n", "hello there\n", "hellothere",
+                "a\n\nb  \n c", "hello there\r\nhow are you\n\n" }) {
+            StringWriter out = new StringWriter();
+            w.wrapParallel(text, out, Runnable::run, 1, 2);
+            assertEquals(w.wrap(text), out.toString());
+        }
+    }
+
+    @Test(expected = IORuntimeException.class)
+    public void testWrapParallelWriterThrows() {
+        WordWrap.configure().build().wrapParallel("hello\nthere", new Writer() {
+
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                throw new IOException("boo");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        }, Runnable::run);
+    }
+
+    @Test
+    public void testWrapFileSameAsStreams() throws IOException {
+        for (String name : new String[] { "treasure-island-fragment.txt",
+                "the-importance-of-being-earnest.txt" }) {
+            Path in = new File("src/test/resources/" + name).toPath();
+            for (int width : new int[] { 5, 80 }) {
+                checkWrapFileSameAsStreams(in, width, StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    @Test
+    public void testWrapFileMultibyteAndMalformed() throws IOException {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        b.write("caf\u00e9 \u4e2d\u6587 emoji \ud83d\ude00\ud83d\ude00 end\r\nnext line here"
+                .getBytes(StandardCharsets.UTF_8));
+        // malformed sequences
+        b.write(new byte[] { (byte) 0xC3, 'x', (byte) 0xFF, ' ', (byte) 0xE4, (byte) 0xB8 });
+        Path in = new File("target/wrapFileMultibyte.txt").toPath();
+        Files.write(in, b.toByteArray());
+        for (int width : new int[] { 1, 3, 10 }) {
+            checkWrapFileSameAsStreams(in, width, StandardCharsets.UTF_8);
+            // unmappable output chars
+            checkWrapFileSameAsStreams(in, width, StandardCharsets.ISO_8859_1);
+            checkWrapFileSameAsStreams(in, width, StandardCharsets.UTF_16);
+        }
+    }
+
+    @Test
+    public void testWrapFileEmpty() throws IOException {
+        Path in = new File("target/wrapFileEmpty.txt").toPath();
+        Files.write(in, new byte[0]);
+        checkWrapFileSameAsStreams(in, 10, StandardCharsets.UTF_8);
+    }
+
+    @Test(expected = IORuntimeException.class)
+    public void testWrapFileDoesNotExist() {
+        WordWrap.configure().build().wrapFile(new File("target/doesNotExist").toPath(),
+                new File("target/wrapFileOut.txt").toPath(), StandardCharsets.UTF_8);
+    }
+
+    private static void checkWrapFileSameAsStreams(Path in, int width, Charset charset)
+            throws IOException {
+        File expectedFile = new File("target/wrapFileExpected.txt");
+        WordWrap.from(in.toFile(), charset).maxWidth(width).newLine("\r\n").wrap(expectedFile,
+                charset);
+        byte[] expected = Files.readAllBytes(expectedFile.toPath());
+        Wrapper w = WordWrap.configure().maxWidth(width).newLine("\r\n").build();
+        Path out = new File("target/wrapFileOut.txt").toPath();
+        w.wrapFile(in, out, charset);
+        assertArrayEquals(expected, Files.readAllBytes(out));
+        // small windows and buffers split multibyte sequences and surrogate pairs
+        // (only on small files as every window is a separate mapping until gc)
+        int[] mapSizes = in.toFile().length() < 1000 ? new int[] { 5, 7, 4096 }
+                : new int[] { 4099, 65536 };
+        for (int mapSize : mapSizes) {
+            for (int bufferSize : new int[] { 2, 3, 100 }) {
+                w.wrapFile(in, out, charset, mapSize, bufferSize);
+                assertArrayEquals(in + " " + width + " " + mapSize + " " + bufferSize, expected,
+                        Files.readAllBytes(out));
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testUnbreakableLongTokenIsNotRemeasuredPerChar() {
+        StringBuilder b = new StringBuilder("before ");
+        for (int i = 0; i < 2000000; i++) {
+            b.append((char) ('a' + i % 26));
+        }
+        String token = b.substring("before ".length());
+        b.append(" after, and more\nnext");
+        int[] calls = new int[1];
+        Wrapper w = WordWrap.configure() //
+                .maxWidth(20) //
+                .breakWords(false) //
+                .stringWidth(s -> {
+                    calls[0]++;
+                    // a measurement that visits every char
+                    int n = 0;
+                    for (int i = 0; i < s.length(); i++) {
+                        n += s.charAt(i) == '\t' ? 4 : 1;
+                    }
+                    return n;
+                }) //
+                .build();
+        assertEquals(Arrays.asList("before", token, "after, and more", "next"),
+                w.wrapToList(b.toString()));
+        assertTrue(String.valueOf(calls[0]), calls[0] < 100);
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        Wrapper w = WordWrap.configure().maxWidth(20).build();
+        String text = "The wind howled dismally round a house standing by itself on the outskirts of a village";
+        String expected = w.wrap(text);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(executor.submit(() -> w.wrap(text)));
+            }
+            for (Future<String> f : futures) {
+                assertEquals(expected, f.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
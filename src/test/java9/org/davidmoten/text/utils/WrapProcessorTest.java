@@ -0,0 +1,291 @@
+package org.davidmoten.text.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class WrapProcessorTest {
+
+    @Test
+    public void testSameAsWrapToList() throws IOException {
+        String text = novel();
+        Wrapper w = WordWrap.configure().maxWidth(20).build();
+        ListPublisher publisher = new ListPublisher(chunks(text, 37));
+        WrapProcessor processor = new WrapProcessor(w);
+        publisher.subscribe(processor);
+        TestSubscriber ts = new TestSubscriber(Long.MAX_VALUE);
+        processor.subscribe(ts);
+        assertTrue(ts.completed);
+        assertEquals(w.wrapToList(text), ts.lines);
+    }
+
+    @Test
+    public void testRequestsUpstreamOnlyWhenDownstreamDemands() {
+        ListPublisher publisher = new ListPublisher(
+                Arrays.asList("hello ", "there ", "how ", "are ", "you ", "today"));
+        WrapProcessor processor = new WrapProcessor(
+                WordWrap.configure().maxWidth(10).build());
+        publisher.subscribe(processor);
+        TestSubscriber ts = new TestSubscriber(0);
+        processor.subscribe(ts);
+        assertEquals(0, publisher.requested);
+        ts.subscription.request(1);
+        assertEquals(Arrays.asList("hello"), ts.lines);
+        // "hello there" is too long so the first line is decided by the second chunk
+        assertEquals(2, publisher.requested);
+        ts.subscription.request(1);
+        assertEquals(Arrays.asList("hello", "there how"), ts.lines);
+        assertEquals(4, publisher.requested);
+        ts.subscription.request(10);
+        assertEquals(Arrays.asList("hello", "there how", "are you", "today"), ts.lines);
+        assertTrue(ts.completed);
+    }
+
+    @Test
+    public void testAsyncPublisherWithSmallRequests() throws Exception {
+        String text = novel();
+        Wrapper w = WordWrap.configure().maxWidth(30).build();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            SubmissionPublisher<CharSequence> publisher = new SubmissionPublisher<>(executor, 4);
+            WrapProcessor processor = new WrapProcessor(w);
+            publisher.subscribe(processor);
+            CountDownLatch done = new CountDownLatch(1);
+            List<String> lines = Collections.synchronizedList(new ArrayList<>());
+            processor.subscribe(new Flow.Subscriber<String>() {
+
+                Flow.Subscription s;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    s = subscription;
+                    s.request(3);
+                }
+
+                @Override
+                public void onNext(String item) {
+                    lines.add(item);
+                    if (lines.size() % 3 == 0) {
+                        executor.execute(() -> s.request(3));
+                    }
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    done.countDown();
+                }
+
+                @Override
+                public void onComplete() {
+                    done.countDown();
+                }
+            });
+            for (String chunk : chunks(text, 101)) {
+                publisher.submit(chunk);
+            }
+            publisher.close();
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+            assertEquals(w.wrapToList(text), lines);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testUpstreamErrorPropagates() {
+        WrapProcessor processor = new WrapProcessor(WordWrap.configure().build());
+        TestSubscriber ts = new TestSubscriber(Long.MAX_VALUE);
+        processor.subscribe(ts);
+        processor.onSubscribe(new NoOpSubscription());
+        RuntimeException e = new RuntimeException("boo");
+        processor.onError(e);
+        assertEquals(e, ts.error);
+    }
+
+    @Test
+    public void testSecondSubscriberGetsError() {
+        WrapProcessor processor = new WrapProcessor(WordWrap.configure().build());
+        processor.subscribe(new TestSubscriber(0));
+        TestSubscriber ts = new TestSubscriber(0);
+        processor.subscribe(ts);
+        assertTrue(ts.error instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testNonPositiveRequestSignalsError() {
+        WrapProcessor processor = new WrapProcessor(WordWrap.configure().build());
+        TestSubscriber ts = new TestSubscriber(0);
+        processor.subscribe(ts);
+        ts.subscription.request(0);
+        assertTrue(ts.error instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void testNoSignalBeforeOnSubscribeReturns() {
+        WrapProcessor processor = new WrapProcessor(WordWrap.configure().build());
+        List<String> events = new ArrayList<>();
+        processor.subscribe(new Flow.Subscriber<String>() {
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                events.add("subscribe start");
+                // as if upstream completed on another thread meanwhile
+                processor.onSubscribe(new NoOpSubscription());
+                processor.onComplete();
+                events.add("subscribe end");
+            }
+
+            @Override
+            public void onNext(String item) {
+                events.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                events.add("error");
+            }
+
+            @Override
+            public void onComplete() {
+                events.add("complete");
+            }
+        });
+        assertEquals(Arrays.asList("subscribe start", "subscribe end", "complete"), events);
+    }
+
+    @Test
+    public void testFinishFailureSignalsError() {
+        AtomicBoolean fail = new AtomicBoolean();
+        RuntimeException e = new RuntimeException("boo");
+        WrapProcessor processor = new WrapProcessor(WordWrap.configure() //
+                .optimalFit(true) //
+                .stringWidth(s -> {
+                    if (fail.get()) {
+                        throw e;
+                    }
+                    return s.length();
+                }) //
+                .build());
+        TestSubscriber ts = new TestSubscriber(Long.MAX_VALUE);
+        processor.subscribe(ts);
+        processor.onSubscribe(new NoOpSubscription());
+        processor.onNext("hello there");
+        fail.set(true);
+        processor.onComplete();
+        assertEquals(e, ts.error);
+        assertFalse(ts.completed);
+    }
+
+    private static String novel() throws IOException {
+        return new String(Files.readAllBytes(
+                new File("src/test/resources/treasure-island-fragment.txt").toPath()),
+                StandardCharsets.UTF_8);
+    }
+
+    private static List<String> chunks(String text, int size) {
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < text.length(); i += size) {
+            list.add(text.substring(i, Math.min(text.length(), i + size)));
+        }
+        return list;
+    }
+
+    private static final class ListPublisher implements Flow.Publisher<CharSequence> {
+
+        private final List<String> chunks;
+        private int index;
+        long requested;
+        private boolean completed;
+
+        ListPublisher(List<String> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super CharSequence> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+
+                @Override
+                public void request(long n) {
+                    requested += n;
+                    for (long i = 0; i < n && index < chunks.size(); i++) {
+                        subscriber.onNext(chunks.get(index++));
+                    }
+                    if (index == chunks.size() && !completed) {
+                        completed = true;
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+        }
+    }
+
+    private static final class TestSubscriber implements Flow.Subscriber<String> {
+
+        private final long initialRequest;
+        final List<String> lines = new ArrayList<>();
+        Flow.Subscription subscription;
+        boolean completed;
+        Throwable error;
+
+        TestSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(String item) {
+            lines.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    private static final class NoOpSubscription implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+}